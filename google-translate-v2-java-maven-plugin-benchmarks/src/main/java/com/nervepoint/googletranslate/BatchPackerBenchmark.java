@@ -0,0 +1,55 @@
+package com.nervepoint.googletranslate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.nervepoint.googletranslate.Translater.TranslationOp;
+
+/**
+ * Packing every op for one language into requests, at the sizes seen when a
+ * large project is translated from scratch.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchPackerBenchmark {
+
+    @Param({ "10000", "100000" })
+    public int ops;
+
+    private List<TranslationOp> list;
+    private BatchPacker packer;
+
+    @Setup
+    public void setup() {
+        List<String> messages = BenchmarkData.messages(ops, 42);
+        list = new ArrayList<TranslationOp>(ops);
+        for (int i = 0; i < ops; i++) {
+            String format = i % 5 == 0 ? "html" : "text";
+            list.add(new TranslationOp("key" + i, messages.get(i), Collections.<String> emptyList(), format, format));
+        }
+        packer = new BatchPacker(128, 5000);
+    }
+
+    @Benchmark
+    public List<List<TranslationOp>> pack() {
+        return packer.pack(list);
+    }
+}
@@ -0,0 +1,88 @@
+package com.nervepoint.googletranslate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+/**
+ * Generates repeatable, realistic looking bundle content for the benchmarks.
+ * Messages are a few words of UI text, many with Wicket style variables,
+ * message format arguments or a little mark-up in them.
+ */
+final class BenchmarkData {
+
+    /** The patterns a typical Wicket project configures as noTranslatePattern */
+    static final String[] NO_TRANSLATE_PATTERNS = { "\\$\\{[/|!]*[a-zA-Z_\\.0-9]*\\}", "\\{[0-9]+\\}" };
+
+    private static final String[] WORDS = { "the", "file", "could", "not", "be", "saved", "because", "user",
+                    "account", "has", "expired", "please", "contact", "your", "administrator", "to", "continue",
+                    "select", "one", "or", "more", "items", "from", "list", "below", "and", "click", "next",
+                    "password", "must", "contain", "at", "least", "characters", "server", "connection", "lost" };
+
+    private static final String[] PLACEHOLDERS = { "${name}", "${user.fullName}", "${/!path}", "{0}", "{1}",
+                    "${count}", "{2}" };
+
+    private BenchmarkData() {
+    }
+
+    static List<String> messages(int count, long seed) {
+        Random r = new Random(seed);
+        List<String> messages = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            messages.add(message(r));
+        }
+        return messages;
+    }
+
+    static List<String> keys(int count, long seed) {
+        Random r = new Random(seed);
+        List<String> keys = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            keys.add("page" + r.nextInt(50) + "." + WORDS[r.nextInt(WORDS.length)] + "." + (r.nextInt(4) == 0 ? "url"
+                            : "label") + i);
+        }
+        return keys;
+    }
+
+    static Properties bundle(int count, long seed) {
+        List<String> keys = keys(count, seed);
+        List<String> messages = messages(count, seed);
+        Properties p = new Properties();
+        for (int i = 0; i < count; i++) {
+            p.setProperty(keys.get(i), messages.get(i));
+        }
+        return p;
+    }
+
+    static PatternReplacer replacer(boolean html) {
+        PatternReplacer replacer = new PatternReplacer();
+        if (html) {
+            replacer.setUntranslatableStrings("<span class=\"notranslate\">NO_TRANSLATE</span>", "NO_TRANSLATE");
+        }
+        for (String p : NO_TRANSLATE_PATTERNS) {
+            replacer.addPattern(p);
+        }
+        return replacer;
+    }
+
+    private static String message(Random r) {
+        int words = 3 + r.nextInt(18);
+        int placeholders = r.nextInt(3) == 0 ? 0 : 1 + r.nextInt(4);
+        StringBuilder b = new StringBuilder();
+        for (int w = 0; w < words; w++) {
+            if (b.length() > 0)
+                b.append(' ');
+            if (r.nextInt(words - w) < placeholders) {
+                b.append(PLACEHOLDERS[r.nextInt(PLACEHOLDERS.length)]);
+                placeholders--;
+            } else if (r.nextInt(20) == 0) {
+                b.append("<b>").append(WORDS[r.nextInt(WORDS.length)]).append("</b>");
+            } else {
+                b.append(WORDS[r.nextInt(WORDS.length)]);
+            }
+        }
+        b.setCharAt(0, Character.toUpperCase(b.charAt(0)));
+        return b.append('.').toString();
+    }
+}
@@ -0,0 +1,64 @@
+package com.nervepoint.googletranslate;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Replacing and restoring untranslatable content, with both the plain marker
+ * and the HTML marker used when useHtmlForNonTranslatable is on.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PatternReplacerBenchmark {
+
+    private static final int MESSAGES = 1024;
+
+    @Param({ "true", "false" })
+    public boolean html;
+
+    private PatternReplacer replacer;
+    private List<String> messages;
+    private PatternReplacer.Processed[] processed;
+    private int next;
+
+    @Setup
+    public void setup() {
+        replacer = BenchmarkData.replacer(html);
+        messages = BenchmarkData.messages(MESSAGES, 42);
+        processed = new PatternReplacer.Processed[MESSAGES];
+        for (int i = 0; i < MESSAGES; i++) {
+            processed[i] = replacer.preProcess(messages.get(i));
+        }
+    }
+
+    @Benchmark
+    public PatternReplacer.Processed preProcess() {
+        return replacer.preProcess(messages.get(next()));
+    }
+
+    @Benchmark
+    public String postProcess() {
+        PatternReplacer.Processed p = processed[next()];
+        return replacer.postProcess(p.getText(), p.getValues());
+    }
+
+    private int next() {
+        return next = (next + 1) & (MESSAGES - 1);
+    }
+}
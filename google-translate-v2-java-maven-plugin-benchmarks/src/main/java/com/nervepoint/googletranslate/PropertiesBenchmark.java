@@ -0,0 +1,75 @@
+package com.nervepoint.googletranslate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reading a source bundle and writing a translated one, for large bundles.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PropertiesBenchmark {
+
+    @Param({ "1000", "10000" })
+    public int size;
+
+    private Translater translater;
+    private Properties bundle;
+    private File file;
+
+    @Setup
+    public void setup() throws IOException {
+        translater = new Translater();
+        bundle = BenchmarkData.bundle(size, 42);
+        file = File.createTempFile("bundle", ".properties");
+        PropertiesWriter.write(file, PropertiesWriter.format(bundle, null, false));
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public Properties load() throws IOException {
+        return translater.loadProperties(file, "source", new TaskLog());
+    }
+
+    /** What bundles were written with before PropertiesWriter */
+    @Benchmark
+    public int store() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size * 64);
+        bundle.store(out, "Auto generated by Google Translate V2 API maven plugin");
+        return out.size();
+    }
+
+    @Benchmark
+    public byte[] format() {
+        return PropertiesWriter.format(bundle, "Auto generated by Google Translate V2 API maven plugin", false);
+    }
+
+    @Benchmark
+    public boolean unchanged() throws IOException {
+        return PropertiesWriter.hasContent(file, PropertiesWriter.format(bundle, null, false));
+    }
+}
@@ -0,0 +1,75 @@
+package com.nervepoint.googletranslate;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The per-property checks the translater makes on every entry of every
+ * bundle: hashing the text, checking there is something to translate and
+ * matching the key against excludeKeys.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TranslaterBenchmark {
+
+    private static final int MESSAGES = 1024;
+
+    private Translater translater;
+    private List<String> messages;
+    private List<String> keys;
+    private int next;
+
+    @Setup
+    public void setup() {
+        translater = new Translater();
+        translater.setExcludeKeys(Arrays.asList(".*\\.url[0-9]*", ".*\\.icon", "app\\.config\\..*", "page4[0-9]\\..*",
+                        ".*\\.format"));
+        messages = BenchmarkData.messages(MESSAGES, 42);
+        keys = BenchmarkData.keys(MESSAGES, 42);
+        /* Some values with nothing to translate */
+        for (int i = 0; i < MESSAGES; i += 16) {
+            messages.set(i, "{0} - {1} (${count})");
+        }
+    }
+
+    @Benchmark
+    public String hash() {
+        return Translater.hash(messages.get(next()));
+    }
+
+    /** The hash earlier versions used, only needed now for old cache entries */
+    @Benchmark
+    public String md5() {
+        return ContentHash.md5(messages.get(next()));
+    }
+
+    @Benchmark
+    public boolean hasAnyAlpha() {
+        return translater.hasAnyAlpha(messages.get(next()));
+    }
+
+    @Benchmark
+    public boolean isIncludeKey() {
+        return translater.isIncludeKey(keys.get(next()));
+    }
+
+    private int next() {
+        return next = (next + 1) & (MESSAGES - 1);
+    }
+}
@@ -0,0 +1,58 @@
+package com.nervepoint.googletranslate;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.nervepoint.googletranslate.Translater.TranslationOp;
+
+/**
+ * Packs translation ops into as few requests as possible. Ops are first split
+ * by the format they must be sent as (a request may only be in one format),
+ * then each request is filled until either the maximum number of strings or
+ * the maximum number of characters would be exceeded. A single op that is
+ * larger than the character budget gets a request of its own rather than being
+ * dropped.
+ */
+class BatchPacker {
+
+    private final int maxSources;
+    private final int maxCharacters;
+
+    BatchPacker(int maxSources, int maxCharacters) {
+        this.maxSources = Math.max(1, maxSources);
+        this.maxCharacters = Math.max(1, maxCharacters);
+    }
+
+    List<List<TranslationOp>> pack(List<TranslationOp> ops) {
+        Map<String, List<TranslationOp>> byFormat = new LinkedHashMap<String, List<TranslationOp>>();
+        for (TranslationOp op : ops) {
+            List<TranslationOp> l = byFormat.get(op.format);
+            if (l == null) {
+                l = new ArrayList<TranslationOp>();
+                byFormat.put(op.format, l);
+            }
+            l.add(op);
+        }
+
+        List<List<TranslationOp>> batches = new ArrayList<List<TranslationOp>>();
+        for (List<TranslationOp> partition : byFormat.values()) {
+            List<TranslationOp> batch = new ArrayList<TranslationOp>();
+            int characters = 0;
+            for (TranslationOp op : partition) {
+                int len = op.value.length();
+                if (!batch.isEmpty() && (batch.size() >= maxSources || characters + len > maxCharacters)) {
+                    batches.add(batch);
+                    batch = new ArrayList<TranslationOp>();
+                    characters = 0;
+                }
+                batch.add(op);
+                characters += len;
+            }
+            if (!batch.isEmpty())
+                batches.add(batch);
+        }
+        return batches;
+    }
+}
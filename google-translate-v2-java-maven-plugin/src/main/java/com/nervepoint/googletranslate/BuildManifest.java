@@ -0,0 +1,123 @@
+package com.nervepoint.googletranslate;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Records the state of the inputs and output of every bundle/language pair
+ * when it was last produced, so a pair where nothing has changed can be skipped
+ * without reading any of its files. The state of a file is its modification
+ * time and length. The translations a pair uses are not recorded, as they are
+ * looked up by the content of the source, so are covered by the source's
+ * state.
+ * <p>
+ * Modification times are only so fine (two seconds on some file systems), so
+ * a file changed again within that time of the last change may keep the same
+ * state. A pair whose source or override was changed that recently when it
+ * was produced is recorded as {@link #UNSURE}, so is produced again next time.
+ * <p>
+ * When saved, only the pairs this run produced are changed. They are merged
+ * into the file as it is at the time (in case another build sharing the cache
+ * has saved it since it was loaded) while holding the {@link CacheLock}.
+ */
+class BuildManifest {
+
+    static final String FILENAME = "build-manifest.properties";
+
+    /** The state of a file that does not exist */
+    static final String MISSING = "-";
+
+    /** The state of a pair whose inputs changed too recently to be trusted */
+    static final String UNSURE = "?";
+
+    /** The finest modification time all file systems in use can be trusted to */
+    static final long MODIFIED_GRANULARITY = 2000;
+
+    private final File file;
+    private final Properties entries = new Properties();
+    private final Properties updates = new Properties();
+
+    BuildManifest(File file) {
+        this.file = file;
+    }
+
+    void load() throws IOException {
+        entries.clear();
+        updates.clear();
+        read(entries);
+    }
+
+    boolean isUpToDate(File source, File override, File target, String config) {
+        return isUpToDate(stat(source), stat(override), target, config);
+    }
+
+    /**
+     * Whether a pair is up to date, given the states of its source and
+     * override (as already known from a {@link BundleIndex}).
+     */
+    boolean isUpToDate(String source, String override, File target, String config) {
+        String recorded = entries.getProperty(target.getAbsolutePath());
+        return recorded != null && recorded.equals(state(source, override, target, config));
+    }
+
+    void update(File source, File override, File target, String config) {
+        update(stat(source), stat(override), target, config);
+    }
+
+    void update(String source, String override, File target, String config) {
+        String state = isRecent(source) || isRecent(override) ? UNSURE : state(source, override, target, config);
+        entries.setProperty(target.getAbsolutePath(), state);
+        updates.setProperty(target.getAbsolutePath(), state);
+    }
+
+    void save() throws IOException {
+        if (updates.isEmpty())
+            return;
+        CacheLock lock = CacheLock.acquire(file.getAbsoluteFile().getParentFile());
+        try {
+            Properties current = new Properties();
+            read(current);
+            for (Map.Entry<Object, Object> en : updates.entrySet()) {
+                current.put(en.getKey(), en.getValue());
+            }
+            PropertiesWriter.write(file, PropertiesWriter.format(current,
+                            "Inputs and outputs of the last translation of each bundle", false));
+        } finally {
+            lock.close();
+        }
+        updates.clear();
+    }
+
+    private void read(Properties properties) throws IOException {
+        try {
+            FileInputStream in = new FileInputStream(file);
+            try {
+                properties.load(in);
+            } finally {
+                in.close();
+            }
+        } catch (FileNotFoundException fnfe) {
+            // First run
+        }
+    }
+
+    private static String state(String source, String override, File target, String config) {
+        return source + "|" + override + "|" + stat(target) + "|" + config;
+    }
+
+    private static boolean isRecent(String state) {
+        if (state.equals(MISSING))
+            return false;
+        long modified = Long.parseLong(state.substring(0, state.indexOf(':')));
+        return modified > System.currentTimeMillis() - MODIFIED_GRANULARITY;
+    }
+
+    private static String stat(File file) {
+        long modified = file.lastModified();
+        return modified == 0 ? MISSING : modified + ":" + file.length();
+    }
+}
@@ -0,0 +1,53 @@
+package com.nervepoint.googletranslate;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+
+/**
+ * A file format resource bundles are kept in. Which format a bundle is in is
+ * decided by its file extension, so the files a build includes decide which
+ * formats are translated.
+ * <p>
+ * Bundles are read an entry at a time rather than loaded whole, and a
+ * translation is written by reading the source bundle again and replacing
+ * each value as it goes, so the translation keeps the source's order,
+ * comments and layout.
+ */
+public interface BundleFormat {
+
+    /**
+     * Receives the entries of a bundle, in the order they are in the file.
+     */
+    interface Handler {
+        void entry(String key, String value) throws IOException;
+    }
+
+    /**
+     * The extension of bundles in this format, including the dot, e.g.
+     * <code>.properties</code>.
+     */
+    String getExtension();
+
+    /**
+     * Read the entries of a bundle.
+     */
+    void read(File file, Handler handler) throws IOException;
+
+    /**
+     * Write the translation of a bundle. Entries with no translation are left
+     * out, or left untranslated where the format needs every entry.
+     *
+     * @param source the bundle in the source language
+     * @param language the language of the translation
+     * @param translations translated values by key
+     * @param comment a comment to start with, if the format has comments, or
+     *            <code>null</code>
+     * @param utf8 whether characters outside of ASCII may be written as they
+     *            are, for formats that otherwise escape them
+     * @param out where to write the translation
+     */
+    void write(File source, String language, Map<String, String> translations, String comment, boolean utf8,
+               OutputStream out) throws IOException;
+}
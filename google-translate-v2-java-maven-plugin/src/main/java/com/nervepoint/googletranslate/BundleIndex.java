@@ -0,0 +1,204 @@
+package com.nervepoint.googletranslate;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The bundles in the source directories, found with one walk of each
+ * directory before anything is translated. Files are grouped into families
+ * that share a base name and extension in the same directory
+ * (<code>messages.properties</code>, <code>messages_fr.properties</code> and
+ * so on), so finding whether a bundle has an override for a language, and
+ * when it was changed, does not need the file system.
+ */
+final class BundleIndex {
+
+    /* Every country of every available locale, as Locale.getAvailableLocales() is slow to search */
+    private static final Set<String> COUNTRIES;
+
+    static {
+        Set<String> countries = new HashSet<String>();
+        for (Locale l : Locale.getAvailableLocales()) {
+            countries.add(l.getCountry());
+        }
+        COUNTRIES = Collections.unmodifiableSet(countries);
+    }
+
+    /**
+     * A file, with its state when the index was built.
+     */
+    static final class Entry {
+        final File file;
+        final long modified;
+        final long length;
+
+        Entry(File file, long modified, long length) {
+            this.file = file;
+            this.modified = modified;
+            this.length = length;
+        }
+
+        /**
+         * The state of the file as recorded in the {@link BuildManifest}.
+         */
+        String stat() {
+            return modified + ":" + length;
+        }
+    }
+
+    /**
+     * The bundles with one base name in one directory.
+     */
+    static final class Family {
+        final File dir;
+        final String baseName;
+        final String extension;
+        /* Keyed by what follows the base name, e.g. fr or fr_CA, or "" for the bundle without one */
+        final Map<String, Entry> locales = new TreeMap<String, Entry>();
+
+        Family(File dir, String baseName, String extension) {
+            this.dir = dir;
+            this.baseName = baseName;
+            this.extension = extension;
+        }
+
+        Entry get(String locale) {
+            return locales.get(locale);
+        }
+    }
+
+    private final Collection<String> extensions;
+    private final Map<String, Entry> files = new HashMap<String, Entry>();
+    private final Map<String, Family> families = new LinkedHashMap<String, Family>();
+
+    private BundleIndex(Collection<String> extensions) {
+        this.extensions = extensions;
+    }
+
+    /**
+     * Index the bundles with any of the extensions in the directories the
+     * translatables were found in. Those with a base directory have it
+     * walked, the others only have their own directory listed.
+     */
+    static BundleIndex build(Iterable<Translatable> translatables, Collection<String> extensions) throws IOException {
+        BundleIndex index = new BundleIndex(extensions);
+        Map<File, Boolean> roots = new LinkedHashMap<File, Boolean>();
+        for (Translatable t : translatables) {
+            File root = (t.getBase() == null ? t.getFile().getParentFile() : t.getBase()).getAbsoluteFile();
+            Boolean recurse = roots.get(root);
+            roots.put(root, (recurse != null && recurse) || t.getBase() != null);
+        }
+        for (Map.Entry<File, Boolean> en : roots.entrySet()) {
+            index.walk(en.getKey(), en.getValue());
+        }
+
+        /* Anything the walks did not see (e.g. without a bundle extension) */
+        for (Translatable t : translatables) {
+            if (index.get(t.getFile()) == null && t.getFile().isFile()) {
+                index.add(t.getFile().getAbsoluteFile(), t.getFile().lastModified(), t.getFile().length());
+            }
+        }
+        return index;
+    }
+
+    /**
+     * The file, or <code>null</code> if it was not a file when the index was
+     * built.
+     */
+    Entry get(File file) {
+        return files.get(file.getAbsolutePath());
+    }
+
+    /**
+     * The family of bundles with the base name and extension in the
+     * directory, or <code>null</code> if there are none.
+     */
+    Family family(File dir, String baseName, String extension) {
+        return families.get(key(dir.getAbsoluteFile(), baseName, extension));
+    }
+
+    int size() {
+        return files.size();
+    }
+
+    /**
+     * Whether the code is the country of any available locale, to tell a
+     * country from a script in a bundle name.
+     */
+    static boolean isCountry(String code) {
+        return COUNTRIES.contains(code);
+    }
+
+    private void walk(File root, boolean recurse) throws IOException {
+        if (!root.isDirectory())
+            return;
+        Files.walkFileTree(root.toPath(), EnumSet.noneOf(FileVisitOption.class), recurse ? Integer.MAX_VALUE : 1,
+                        new SimpleFileVisitor<Path>() {
+                            @Override
+                            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                                if (attrs.isRegularFile() && isBundle(file.getFileName().toString())) {
+                                    add(file.toFile(), attrs.lastModifiedTime().toMillis(), attrs.size());
+                                }
+                                return FileVisitResult.CONTINUE;
+                            }
+
+                            @Override
+                            public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+                                if (exc instanceof NoSuchFileException)
+                                    return FileVisitResult.CONTINUE;
+                                throw exc;
+                            }
+                        });
+    }
+
+    private boolean isBundle(String name) {
+        for (String extension : extensions) {
+            if (name.endsWith(extension))
+                return true;
+        }
+        return false;
+    }
+
+    private void add(File file, long modified, long length) {
+        Entry entry = new Entry(file, modified, length);
+        if (files.put(file.getAbsolutePath(), entry) != null)
+            return;
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        String extension = dot == -1 ? "" : name.substring(dot);
+        if (dot != -1)
+            name = name.substring(0, dot);
+        int idx = name.indexOf('_');
+        String baseName = idx == -1 ? name : name.substring(0, idx);
+        String locale = idx == -1 ? "" : name.substring(idx + 1);
+        File dir = file.getParentFile();
+        String key = key(dir, baseName, extension);
+        Family family = families.get(key);
+        if (family == null) {
+            family = new Family(dir, baseName, extension);
+            families.put(key, family);
+        }
+        family.locales.put(locale, entry);
+    }
+
+    private static String key(File dir, String baseName, String extension) {
+        return dir.getPath() + File.separator + baseName + extension;
+    }
+}
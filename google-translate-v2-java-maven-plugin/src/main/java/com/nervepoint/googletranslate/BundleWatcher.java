@@ -0,0 +1,154 @@
+package com.nervepoint.googletranslate;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watches a source directory, and those below it, for bundles being saved.
+ * How soon a change is seen depends on the platform's
+ * {@link WatchService}; on Linux and Windows it is as soon as the file is
+ * written.
+ */
+public class BundleWatcher implements Closeable {
+
+    final static Logger LOG = LoggerFactory.getLogger(BundleWatcher.class);
+
+    /**
+     * How often to check that something is still being watched while waiting,
+     * as a directory that goes away (e.g. is unmounted) is not always seen as
+     * a change.
+     */
+    private static final long CHECK_INTERVAL = 1000;
+
+    private final WatchService watcher;
+    private final Collection<String> extensions;
+    private final Map<WatchKey, Path> keys = new HashMap<WatchKey, Path>();
+
+    /**
+     * Watch for changes to files with any of the extensions (including the
+     * dot) in the directory.
+     */
+    public BundleWatcher(File dir, Collection<String> extensions) throws IOException {
+        this.extensions = extensions;
+        watcher = FileSystems.getDefault().newWatchService();
+        try {
+            register(dir.toPath());
+        } catch (IOException ioe) {
+            watcher.close();
+            throw ioe;
+        }
+    }
+
+    /**
+     * Wait for bundles to change, then until there have been no more changes
+     * for the quiet period (so that saving several files, or an editor that
+     * writes a file more than once, only causes one run).
+     *
+     * @param timeout milliseconds to wait for the first change, 0 to wait for
+     *            as long as it takes
+     * @param quiet milliseconds without changes before returning
+     * @return the bundles that changed (including those deleted), empty if
+     *         nothing changed before the timeout or nothing is being watched
+     *         any more
+     */
+    public Set<File> poll(long timeout, long quiet) throws IOException, InterruptedException {
+        Set<File> changed = new TreeSet<File>();
+        long until = timeout <= 0 ? Long.MAX_VALUE : System.currentTimeMillis() + timeout;
+        while (changed.isEmpty() && isWatching()) {
+            long wait = until - System.currentTimeMillis();
+            if (wait <= 0)
+                break;
+            WatchKey key = watcher.poll(Math.min(wait, CHECK_INTERVAL), TimeUnit.MILLISECONDS);
+            if (key != null)
+                handle(key, changed);
+        }
+        if (!changed.isEmpty()) {
+            WatchKey key;
+            while ((key = watcher.poll(quiet, TimeUnit.MILLISECONDS)) != null) {
+                handle(key, changed);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Whether anything is still being watched (it stops when the directory is
+     * deleted).
+     */
+    public boolean isWatching() {
+        for (Iterator<WatchKey> it = keys.keySet().iterator(); it.hasNext();) {
+            if (!it.next().isValid())
+                it.remove();
+        }
+        return !keys.isEmpty();
+    }
+
+    @Override
+    public void close() throws IOException {
+        watcher.close();
+    }
+
+    private void handle(WatchKey key, Set<File> changed) throws IOException {
+        Path dir = keys.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                LOG.debug("Missed some changes in " + dir);
+                changed.add(dir.toFile());
+                continue;
+            }
+            Path path = dir.resolve((Path) event.context());
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+                register(path);
+                changed.add(path.toFile());
+            } else if (isBundle(path.getFileName().toString())) {
+                changed.add(path.toFile());
+            }
+        }
+        if (!key.reset()) {
+            keys.remove(key);
+        }
+    }
+
+    private boolean isBundle(String name) {
+        for (String extension : extensions) {
+            if (name.endsWith(extension))
+                return true;
+        }
+        return false;
+    }
+
+    private void register(Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                keys.put(dir.register(watcher, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
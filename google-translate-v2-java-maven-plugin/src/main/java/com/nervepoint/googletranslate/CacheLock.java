@@ -0,0 +1,81 @@
+package com.nervepoint.googletranslate;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An exclusive lock on a cache directory, held while its files are read,
+ * merged and written. It works across processes (several builds sharing a
+ * home directory) by locking a file in the directory, and within a process
+ * (a parallel build) by also taking a lock per directory, as file locks are
+ * held on behalf of the whole process.
+ */
+final class CacheLock implements Closeable {
+
+    static final String FILENAME = "cache.lock";
+
+    private static final ConcurrentMap<String, ReentrantLock> LOCKS = new ConcurrentHashMap<String, ReentrantLock>();
+
+    private final ReentrantLock local;
+    private final RandomAccessFile file;
+    private final FileLock lock;
+
+    private CacheLock(ReentrantLock local, RandomAccessFile file, FileLock lock) {
+        this.local = local;
+        this.file = file;
+        this.lock = lock;
+    }
+
+    /**
+     * Wait for, then take, the lock on a directory.
+     */
+    static CacheLock acquire(File dir) throws IOException {
+        dir.mkdirs();
+        File lockFile = new File(dir, FILENAME).getCanonicalFile();
+        ReentrantLock local = new ReentrantLock();
+        ReentrantLock existing = LOCKS.putIfAbsent(lockFile.getPath(), local);
+        if (existing != null)
+            local = existing;
+        local.lock();
+        if (local.getHoldCount() > 1) {
+            /* Already held by this thread, so by this process too */
+            return new CacheLock(local, null, null);
+        }
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(lockFile, "rw");
+            return new CacheLock(local, raf, raf.getChannel().lock());
+        } catch (IOException ioe) {
+            if (raf != null)
+                raf.close();
+            local.unlock();
+            throw ioe;
+        } catch (RuntimeException re) {
+            if (raf != null)
+                raf.close();
+            local.unlock();
+            throw re;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (lock != null) {
+                try {
+                    lock.release();
+                } finally {
+                    file.close();
+                }
+            }
+        } finally {
+            local.unlock();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.nervepoint.googletranslate;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.SortedSet;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.codec.binary.Hex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The translations in a cache directory as a single gzipped file, so a cache
+ * can be deployed as an artifact and used to warm another machine's. Only the
+ * translation memory is included; the build manifest records the state of
+ * files on the machine that made it, so means nothing anywhere else.
+ * <p>
+ * A snapshot is a header (magic and version) followed by the number of
+ * entries and then each key and translation, in key order. The same
+ * translations therefore always make the same file, which is named after a
+ * hash of its content.
+ */
+public final class CacheSnapshot {
+
+    final static Logger LOG = LoggerFactory.getLogger(CacheSnapshot.class);
+
+    public static final String EXTENSION = ".i18n.gz";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final byte[] MAGIC = new byte[] { 'I', '1', '8', 'N', 'S', 'N', 'A', 'P' };
+    private static final int VERSION = 1;
+
+    /* Keys that only mean something on the machine that wrote them */
+    private static final String LOCAL_PREFIX = "legacy|";
+
+    private CacheSnapshot() {
+    }
+
+    /**
+     * Write a snapshot of the translations in the cache directory to the
+     * output directory.
+     *
+     * @param name start of the file name, followed by the content hash
+     * @return the snapshot written
+     */
+    public static File export(File cacheDir, File outputDir, String name) throws IOException {
+        outputDir.mkdirs();
+        File tmp = File.createTempFile(name, ".tmp", outputDir);
+        String hash;
+        int count = 0;
+        TranslationMemory memory = new TranslationMemory(new File(cacheDir, TranslationMemory.FILENAME));
+        memory.open();
+        try {
+            MessageDigest digest = sha256();
+            DataOutputStream out = new DataOutputStream(new DigestOutputStream(new BufferedOutputStream(
+                            new GZIPOutputStream(new FileOutputStream(tmp), 65536)), digest));
+            try {
+                SortedSet<String> keys = memory.keys();
+                for (String key : keys) {
+                    if (!key.startsWith(LOCAL_PREFIX))
+                        count++;
+                }
+                out.write(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(count);
+                for (String key : keys) {
+                    if (key.startsWith(LOCAL_PREFIX))
+                        continue;
+                    write(out, key);
+                    write(out, memory.get(key));
+                }
+            } finally {
+                out.close();
+            }
+            hash = new String(Hex.encodeHex(digest.digest())).substring(0, 16);
+        } catch (IOException ioe) {
+            tmp.delete();
+            throw ioe;
+        } finally {
+            memory.close();
+        }
+        File snapshot = new File(outputDir, name + "-" + hash + EXTENSION);
+        Files.move(tmp.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        LOG.info("Wrote " + count + " translations to " + snapshot);
+        return snapshot;
+    }
+
+    /**
+     * Merge the translations in a snapshot into the cache directory. Those the
+     * cache already has are kept, so importing the same snapshot again does
+     * nothing.
+     *
+     * @return the number of translations added
+     */
+    public static int importInto(File snapshot, File cacheDir) throws IOException {
+        cacheDir.mkdirs();
+        int added = 0;
+        TranslationMemory memory = new TranslationMemory(new File(cacheDir, TranslationMemory.FILENAME));
+        memory.open();
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(
+                            new FileInputStream(snapshot), 65536)));
+            try {
+                byte[] magic = new byte[MAGIC.length];
+                in.readFully(magic);
+                if (!Arrays.equals(magic, MAGIC))
+                    throw new IOException(snapshot + " is not a translation cache snapshot.");
+                int version = in.readInt();
+                if (version != VERSION) {
+                    throw new IOException(snapshot + " is version " + version
+                                    + " of the snapshot format, expected " + VERSION);
+                }
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    String key = read(in);
+                    String value = read(in);
+                    if (!memory.containsKey(key)) {
+                        memory.put(key, value);
+                        added++;
+                    }
+                }
+            } catch (EOFException eofe) {
+                throw new IOException(snapshot + " is incomplete.", eofe);
+            } finally {
+                in.close();
+            }
+        } finally {
+            memory.close();
+        }
+        LOG.info("Added " + added + " translations from " + snapshot + " to " + cacheDir);
+        return added;
+    }
+
+    private static void write(DataOutputStream out, String s) throws IOException {
+        byte[] b = s.getBytes(UTF8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    private static String read(DataInputStream in) throws IOException {
+        int len = in.readInt();
+        if (len < 0)
+            throw new IOException("Corrupt snapshot.");
+        byte[] b = new byte[len];
+        in.readFully(b);
+        return new String(b, UTF8);
+    }
+
+    private static MessageDigest sha256() throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new IOException(nsae);
+        }
+    }
+}
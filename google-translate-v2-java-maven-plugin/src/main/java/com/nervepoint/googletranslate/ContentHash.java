@@ -0,0 +1,136 @@
+package com.nervepoint.googletranslate;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Hashes of the text sent for translation, used to look translations up. The
+ * current hash is the 128 bit MurmurHash3 (x64 variant) of the UTF-16LE form
+ * of the text, which needs no encoding or digest object. It is prefixed with
+ * {@link #VERSION} so it can never be mistaken for an MD5 hash, which is what
+ * translations made by earlier versions are keyed by.
+ */
+final class ContentHash {
+
+    /** Prefix of the current kind of hash */
+    static final String VERSION = "m3:";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private static final ThreadLocal<MessageDigest> MD5 = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("MD5 is not available.", e);
+            }
+        }
+    };
+
+    private ContentHash() {
+    }
+
+    /**
+     * The current hash of some text.
+     */
+    static String of(String content) {
+        long h1 = 0;
+        long h2 = 0;
+        int len = content.length();
+        int end = len & ~7;
+        for (int o = 0; o < end; o += 8) {
+            h1 ^= mixK1(chars(content, o, 4));
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+
+            h2 ^= mixK2(chars(content, o + 4, 4));
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+        int remaining = len - end;
+        if (remaining > 4) {
+            h2 ^= mixK2(chars(content, end + 4, remaining - 4));
+        }
+        if (remaining > 0) {
+            h1 ^= mixK1(chars(content, end, Math.min(remaining, 4)));
+        }
+
+        long bytes = len * 2L;
+        h1 ^= bytes;
+        h2 ^= bytes;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix(h1);
+        h2 = fmix(h2);
+        h1 += h2;
+        h2 += h1;
+
+        char[] out = new char[VERSION.length() + 32];
+        VERSION.getChars(0, VERSION.length(), out, 0);
+        hex(h1, out, VERSION.length());
+        hex(h2, out, VERSION.length() + 16);
+        return new String(out);
+    }
+
+    /**
+     * The MD5 hash of the UTF-8 form of some text, as hex. This is the hash
+     * earlier versions used.
+     */
+    static String md5(String content) {
+        MessageDigest digest = MD5.get();
+        byte[] hash = digest.digest(content.getBytes(UTF8));
+        char[] out = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            out[i * 2] = HEX[(hash[i] >> 4) & 0xf];
+            out[i * 2 + 1] = HEX[hash[i] & 0xf];
+        }
+        return new String(out);
+    }
+
+    /**
+     * Up to 4 chars as a little-endian long, the same as reading their UTF-16LE
+     * bytes.
+     */
+    private static long chars(String s, int offset, int count) {
+        long k = 0;
+        for (int i = 0; i < count; i++) {
+            k |= (long) s.charAt(offset + i) << (16 * i);
+        }
+        return k;
+    }
+
+    private static long mixK1(long k1) {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        return k1 * C2;
+    }
+
+    private static long mixK2(long k2) {
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        return k2 * C1;
+    }
+
+    private static long fmix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+    private static void hex(long v, char[] out, int offset) {
+        for (int i = 15; i >= 0; i--) {
+            out[offset + i] = HEX[(int) (v & 0xf)];
+            v >>>= 4;
+        }
+    }
+}
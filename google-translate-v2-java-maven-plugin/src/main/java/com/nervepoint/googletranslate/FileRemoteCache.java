@@ -0,0 +1,63 @@
+package com.nervepoint.googletranslate;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A remote cache in a directory, such as one on a shared file system. The
+ * translations are kept in a {@link TranslationMemory}, so any number of
+ * builds can use the directory at once. This is also what
+ * {@link RemoteCacheServer} serves.
+ */
+public class FileRemoteCache implements RemoteCache {
+
+    private final File dir;
+    private TranslationMemory memory;
+
+    public FileRemoteCache(File dir) {
+        this.dir = dir;
+    }
+
+    @Override
+    public int getMaxKeys() {
+        return 1000;
+    }
+
+    @Override
+    public synchronized void open() throws IOException {
+        dir.mkdirs();
+        memory = new TranslationMemory(new File(dir, TranslationMemory.FILENAME));
+        memory.open();
+    }
+
+    @Override
+    public synchronized Map<String, String> get(Collection<String> keys) throws IOException {
+        memory.refresh();
+        Map<String, String> found = new HashMap<String, String>();
+        for (String key : keys) {
+            String value = memory.get(key);
+            if (value != null)
+                found.put(key, value);
+        }
+        return found;
+    }
+
+    @Override
+    public synchronized void put(Map<String, String> translations) throws IOException {
+        for (Map.Entry<String, String> en : translations.entrySet()) {
+            memory.put(en.getKey(), en.getValue());
+        }
+        memory.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (memory != null) {
+            memory.close();
+            memory = null;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.nervepoint.googletranslate;
+
+import java.io.IOException;
+import java.net.ProxySelector;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
+import org.apache.http.impl.conn.ProxySelectorRoutePlanner;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+
+import com.google.api.client.googleapis.GoogleUtils;
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpExecuteInterceptor;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpRequestInitializer;
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.UrlEncodedContent;
+import com.google.api.client.http.apache.ApacheHttpTransport;
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.api.services.translate.Translate;
+import com.google.api.services.translate.TranslateRequestInitializer;
+import com.google.api.services.translate.model.TranslationsListResponse;
+import com.google.api.services.translate.model.TranslationsResource;
+
+/**
+ * Translates using the Google Translate V2 API.
+ */
+public class GoogleTranslationBackend implements TranslationBackend {
+
+    public static final String NAME = "google";
+
+    private final JsonFactory JSON_FACTORY = JacksonFactory.getDefaultInstance();
+
+    private String apikey;
+    private String endpoint;
+    private int connections = 4;
+    private boolean compressRequests = true;
+    private HttpTransport httpTransport;
+    private Translate client;
+
+    public String getApikey() {
+        return apikey;
+    }
+
+    public void setApikey(String apikey) {
+        this.apikey = apikey;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public void setEndpoint(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    public int getConnections() {
+        return connections;
+    }
+
+    public void setConnections(int connections) {
+        this.connections = connections;
+    }
+
+    public boolean isCompressRequests() {
+        return compressRequests;
+    }
+
+    public void setCompressRequests(boolean compressRequests) {
+        this.compressRequests = compressRequests;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public int getMaxSources() {
+        return 128;
+    }
+
+    @Override
+    public int getMaxCharacters() {
+        return 30000;
+    }
+
+    @Override
+    public void open() throws IOException {
+        if (apikey == null) {
+            throw new IOException("Translation will not be performed because there is no API key available");
+        }
+
+        /*
+         * Initialize the transport. Connections are pooled and kept alive, one
+         * per request that may be in flight at once
+         */
+        ApacheHttpTransport.Builder transportBuilder = new ApacheHttpTransport.Builder();
+        try {
+            transportBuilder.trustCertificates(GoogleUtils.getCertificateTrustStore());
+        } catch (Exception e) {
+            throw new IOException("Failed to load trusted certificates.", e);
+        }
+        SchemeRegistry registry = new SchemeRegistry();
+        registry.register(new Scheme("http", 80, PlainSocketFactory.getSocketFactory()));
+        registry.register(new Scheme("https", 443, transportBuilder.getSSLSocketFactory()));
+        ThreadSafeClientConnManager connectionManager = new ThreadSafeClientConnManager(registry);
+        connectionManager.setMaxTotal(connections);
+        connectionManager.setDefaultMaxPerRoute(connections);
+        DefaultHttpClient httpClient = new DefaultHttpClient(connectionManager, transportBuilder.getHttpParams());
+        httpClient.setHttpRequestRetryHandler(new DefaultHttpRequestRetryHandler(0, false));
+        httpClient.setRoutePlanner(new ProxySelectorRoutePlanner(registry, ProxySelector.getDefault()));
+        httpTransport = new ApacheHttpTransport(httpClient);
+
+        /*
+         * Set up the Translate instance. Requests are always POSTed, so the
+         * strings go in the (compressed) body rather than the URL
+         */
+        Translate.Builder builder = new Translate.Builder(httpTransport, JSON_FACTORY, new PostRequests());
+        builder.setGoogleClientRequestInitializer(new TranslateRequestInitializer(apikey));
+        builder.setApplicationName("GoogleTranslateMavenPlugin/0.2");
+        if (endpoint != null && endpoint.length() > 0) {
+            builder.setRootUrl(endpoint.endsWith("/") ? endpoint : endpoint + "/");
+        }
+        client = builder.build();
+    }
+
+    @Override
+    public List<String> translate(List<String> texts, String sourceLanguage, String targetLanguage, String format)
+                    throws IOException {
+        Translate.Translations.List res = client.translations().list(texts, targetLanguage);
+        res.setSource(sourceLanguage);
+        res.setFormat(format);
+        res.setDisableGZipContent(!compressRequests);
+        TranslationsListResponse c;
+        try {
+            c = res.execute();
+        } catch (HttpResponseException hre) {
+            throw retryable(hre);
+        } catch (IOException ioe) {
+            /* Most likely a connection that failed or timed out */
+            throw new RetryableTranslationException(ioe.getMessage(), ioe, false, 0);
+        }
+        List<String> translated = new ArrayList<String>(texts.size());
+        for (TranslationsResource r : c.getTranslations()) {
+            translated.add(r.getTranslatedText());
+        }
+        return translated;
+    }
+
+    /**
+     * Work out if a failed request may be made again. Too many requests
+     * (429), the per-user rate limit (403 userRateLimitExceeded or
+     * rateLimitExceeded) and an overloaded service (503) mean we are sending
+     * too much. Other server errors are worth retrying, anything else (such as
+     * a bad key or the daily limit) will not get better.
+     */
+    static IOException retryable(HttpResponseException hre) {
+        int status = hre.getStatusCode();
+        String content = hre.getContent() == null ? "" : hre.getContent().toLowerCase();
+        boolean throttled = status == 429 || status == 503
+                        || (status == 403 && content.contains("ratelimitexceeded"));
+        if (!throttled && (status < 500 || status == 501))
+            return hre;
+        long retryAfter = 0;
+        String header = hre.getHeaders().getRetryAfter();
+        if (header != null) {
+            try {
+                retryAfter = Long.parseLong(header.trim()) * 1000;
+            } catch (NumberFormatException nfe) {
+                // An HTTP date, just use our own backoff
+            }
+        }
+        return new RetryableTranslationException(hre.getMessage(), hre, throttled, retryAfter);
+    }
+
+    @Override
+    public void close() throws IOException {
+        client = null;
+        if (httpTransport != null) {
+            httpTransport.shutdown();
+            httpTransport = null;
+        }
+    }
+
+    /**
+     * Sends GET requests as a POST with the parameters in the body (other than
+     * the API key), which the API accepts with an X-HTTP-Method-Override
+     * header. This keeps long batches out of the URL and lets the body be
+     * compressed.
+     */
+    static class PostRequests implements HttpRequestInitializer, HttpExecuteInterceptor {
+
+        @Override
+        public void initialize(HttpRequest request) throws IOException {
+            request.setInterceptor(this);
+        }
+
+        @Override
+        public void intercept(HttpRequest request) throws IOException {
+            if (!request.getRequestMethod().equals("GET"))
+                return;
+            GenericUrl url = request.getUrl();
+            GenericUrl params = url.clone();
+            Object key = params.remove("key");
+            url.clear();
+            if (key != null)
+                url.put("key", key);
+            request.setRequestMethod("POST");
+            request.getHeaders().set("X-HTTP-Method-Override", "GET");
+            request.setContent(new UrlEncodedContent(params));
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.nervepoint.googletranslate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.type.TypeReference;
+
+/**
+ * A remote cache behind a simple HTTP interface, such as
+ * {@link RemoteCacheServer}. There are two calls, both a <code>POST</code> of
+ * JSON:
+ * <ul>
+ * <li><code>[url]/lookup</code> with <code>{"keys":["key", ...]}</code>,
+ * answered with <code>{"key":"translation", ...}</code> for the keys found</li>
+ * <li><code>[url]/store</code> with <code>{"key":"translation", ...}</code></li>
+ * </ul>
+ * If the server needs a token, it is sent as
+ * <code>Authorization: Bearer [token]</code>.
+ */
+public class HttpRemoteCache implements RemoteCache {
+
+    private static final TypeReference<Map<String, String>> MAP = new TypeReference<Map<String, String>>() {
+    };
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final String url;
+    private int timeout = 2000;
+    private String token;
+
+    public HttpRemoteCache(String url) {
+        this.url = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+
+    public int getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Milliseconds to wait to connect, and then for a response.
+     */
+    public void setTimeout(int timeout) {
+        this.timeout = timeout;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    /**
+     * The token the server needs, or <code>null</code> if it needs none.
+     */
+    public void setToken(String token) {
+        this.token = token;
+    }
+
+    @Override
+    public int getMaxKeys() {
+        return 500;
+    }
+
+    @Override
+    public void open() throws IOException {
+    }
+
+    @Override
+    public Map<String, String> get(Collection<String> keys) throws IOException {
+        Map<String, String> found = post("/lookup", Collections.singletonMap("keys", keys));
+        return found == null ? new HashMap<String, String>() : found;
+    }
+
+    @Override
+    public void put(Map<String, String> translations) throws IOException {
+        post("/store", translations);
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+
+    private Map<String, String> post(String path, Object body) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url + path).openConnection();
+        try {
+            conn.setConnectTimeout(timeout);
+            conn.setReadTimeout(timeout);
+            conn.setDoOutput(true);
+            conn.setRequestMethod("POST");
+            conn.setRequestProperty("Content-Type", "application/json; charset=UTF-8");
+            if (token != null)
+                conn.setRequestProperty("Authorization", "Bearer " + token);
+            OutputStream out = conn.getOutputStream();
+            try {
+                mapper.writeValue(out, body);
+            } finally {
+                out.close();
+            }
+            int status = conn.getResponseCode();
+            if (status / 100 != 2) {
+                throw new IOException("Remote cache " + url + path + " returned " + status);
+            }
+            if (status == HttpURLConnection.HTTP_NO_CONTENT)
+                return null;
+            InputStream in = conn.getInputStream();
+            try {
+                /* The length may not be given, so only an empty body says there is nothing */
+                ByteArrayOutputStream content = new ByteArrayOutputStream();
+                byte[] buf = new byte[8192];
+                int r;
+                while ((r = in.read(buf)) != -1) {
+                    content.write(buf, 0, r);
+                }
+                if (content.size() == 0)
+                    return null;
+                return mapper.readValue(content.toByteArray(), 0, content.size(), MAP);
+            } finally {
+                in.close();
+            }
+        } finally {
+            conn.disconnect();
+        }
+    }
+}
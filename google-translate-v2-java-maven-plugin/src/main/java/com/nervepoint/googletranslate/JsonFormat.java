@@ -0,0 +1,116 @@
+package com.nervepoint.googletranslate;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonStreamContext;
+import org.codehaus.jackson.JsonToken;
+
+/**
+ * JSON bundles, as used by most JavaScript i18n libraries. Each string is an
+ * entry, keyed by its path with nested objects joined by <code>.</code> and
+ * array elements by index, e.g. <code>menu.file.open</code> or
+ * <code>days[0]</code>. Anything else (numbers, booleans and so on) is copied
+ * as it is. JSON has no comments, so there are none to keep.
+ */
+final class JsonFormat implements BundleFormat {
+
+    static final String EXTENSION = ".json";
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    @Override
+    public String getExtension() {
+        return EXTENSION;
+    }
+
+    @Override
+    public void read(File file, Handler handler) throws IOException {
+        JsonParser parser = FACTORY.createJsonParser(file);
+        try {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                if (token == JsonToken.VALUE_STRING)
+                    handler.entry(key(parser.getParsingContext()), parser.getText());
+            }
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * Strings with no translation are left out of objects, so the library
+     * falls back to the source language, but are left untranslated in arrays
+     * so the other elements keep their place.
+     */
+    @Override
+    public void write(File source, String language, Map<String, String> translations, String comment, boolean utf8,
+                      OutputStream out) throws IOException {
+        JsonParser parser = FACTORY.createJsonParser(source);
+        try {
+            JsonGenerator gen = FACTORY.createJsonGenerator(out, JsonEncoding.UTF8);
+            gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            if (!utf8)
+                gen.enable(JsonGenerator.Feature.ESCAPE_NON_ASCII);
+            gen.useDefaultPrettyPrinter();
+
+            /* Field names wait for their value, as the field may be left out */
+            String field = null;
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                if (token == JsonToken.FIELD_NAME) {
+                    field = parser.getCurrentName();
+                    continue;
+                }
+                if (token == JsonToken.VALUE_STRING) {
+                    JsonStreamContext ctx = parser.getParsingContext();
+                    String translated = translations.get(key(ctx));
+                    if (translated == null && !ctx.inArray()) {
+                        field = null;
+                        continue;
+                    }
+                    if (field != null) {
+                        gen.writeFieldName(field);
+                        field = null;
+                    }
+                    gen.writeString(translated == null ? parser.getText() : translated);
+                    continue;
+                }
+                if (field != null) {
+                    gen.writeFieldName(field);
+                    field = null;
+                }
+                gen.copyCurrentEvent(parser);
+            }
+            gen.writeRaw('\n');
+            gen.close();
+        } finally {
+            parser.close();
+        }
+    }
+
+    private static String key(JsonStreamContext ctx) {
+        StringBuilder b = new StringBuilder();
+        path(b, ctx);
+        return b.toString();
+    }
+
+    private static void path(StringBuilder b, JsonStreamContext ctx) {
+        if (ctx == null || ctx.inRoot())
+            return;
+        path(b, ctx.getParent());
+        if (ctx.inArray()) {
+            b.append('[').append(ctx.getCurrentIndex()).append(']');
+        } else {
+            if (b.length() > 0)
+                b.append('.');
+            b.append(ctx.getCurrentName());
+        }
+    }
+}
@@ -1,12 +1,65 @@
 package com.nervepoint.googletranslate;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+/**
+ * Replaces content that must not be translated with a marker before it is sent
+ * to the translator, and puts it back afterwards. Once configured, a replacer
+ * holds no per-call state, so a single instance may be shared by any number of
+ * threads. What was replaced is carried in the {@link Processed} result
+ * instead.
+ */
 public class PatternReplacer {
 
+    /**
+     * The result of {@link PatternReplacer#preProcess(String)}. The text to
+     * send to the translator has a numbered marker in place of each replaced
+     * value, so values can be put back in the right place even if the
+     * translator moves them. The canonical text has the plain, un-numbered
+     * marker instead, and is what identifies the content (it is what older
+     * versions sent, so existing cache entries still match).
+     */
+    public static final class Processed {
+        private final String text;
+        private final String canonicalText;
+        private final List<String> values;
+        private final int savedCharacters;
+
+        Processed(String text, String canonicalText, List<String> values, int savedCharacters) {
+            this.text = text;
+            this.canonicalText = canonicalText;
+            this.values = values;
+            this.savedCharacters = savedCharacters;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public String getCanonicalText() {
+            return canonicalText;
+        }
+
+        public List<String> getValues() {
+            return values;
+        }
+
+        /**
+         * How much shorter the text is for using tags rather than the
+         * untranslatable string (see {@link PatternReplacer#setTags(boolean)}).
+         */
+        public int getSavedCharacters() {
+            return savedCharacters;
+        }
+    }
+
+    /* What tags may come back as, <x0/> perhaps with space before the slash or a closing tag added */
+    private static final String TAG_PATTERN = "<x(\\d+)\\s*/?>(?:</x\\d+>)?";
+
     /**
      * A string that the translate API will not translate. This is the best I
      * could find that works well enough for now. Anything we don't want
@@ -16,8 +69,10 @@ public class PatternReplacer {
      */
     private String[] untranslatableStrings = new String[] { "_999_" };
 
+    private boolean tags;
     private List<String> patterns = new ArrayList<String>();
-    private List<String> contentMap = new ArrayList<String>();
+    private volatile Pattern compiled;
+    private volatile Pattern markers;
 
     public PatternReplacer() {
     }
@@ -25,68 +80,173 @@ public class PatternReplacer {
     public String getUntranslatableString() {
         return untranslatableStrings.length == 0 ? null : untranslatableStrings[0];
     }
-    
+
     public void setUntranslatableString(String untranslatableString) {
         this.untranslatableStrings = new String[] { untranslatableString };
+        markers = null;
     }
 
     public String[] getUntranslatableStrings() {
         return untranslatableStrings;
     }
-    
+
     public void setUntranslatableStrings(String... untranslatableStrings) {
         this.untranslatableStrings = untranslatableStrings;
+        markers = null;
     }
 
-    public void addPattern(String pattern) {
+    public boolean isTags() {
+        return tags;
+    }
+
+    /**
+     * Send each value as a short numbered tag, <code>&lt;x0/&gt;</code>,
+     * <code>&lt;x1/&gt;</code> and so on, rather than as the untranslatable
+     * string with a number. These must be sent as <code>html</code>. The
+     * canonical text still has the untranslatable string, so what is cached
+     * does not depend on which is sent.
+     */
+    public void setTags(boolean tags) {
+        this.tags = tags;
+    }
+
+    public synchronized void addPattern(String pattern) {
         patterns.add(pattern);
+        compiled = null;
     }
 
-    public List<String> getContentMap() {
-        return contentMap;
+    public Processed preProcess(String content) {
+        Pattern p = getPattern();
+        if (p == null) {
+            return new Processed(content, content, Collections.<String> emptyList(), 0);
+        }
+        Matcher m = p.matcher(content);
+        if (!m.find()) {
+            return new Processed(content, content, Collections.<String> emptyList(), 0);
+        }
+        String marker = untranslatableStrings[0];
+        String core = getCore();
+        int coreIdx = marker.indexOf(core);
+        List<String> values = new ArrayList<String>();
+        StringBuilder sb = new StringBuilder(content.length() + 8);
+        StringBuilder canonical = new StringBuilder(content.length());
+        int saved = 0;
+        int last = 0;
+        do {
+            sb.append(content, last, m.start());
+            canonical.append(content, last, m.start());
+            if (tags) {
+                sb.append("<x").append(values.size()).append("/>");
+                /* Both have the number, the marker also has an _ after it */
+                saved += marker.length() + 1 - "<x/>".length();
+            } else {
+                sb.append(marker, 0, coreIdx + core.length());
+                sb.append(values.size()).append('_');
+                sb.append(marker, coreIdx + core.length(), marker.length());
+            }
+            canonical.append(marker);
+            values.add(m.group());
+            last = m.end();
+        } while (m.find());
+        sb.append(content, last, content.length());
+        canonical.append(content, last, content.length());
+        return new Processed(sb.toString(), canonical.toString(), Collections.unmodifiableList(values), saved);
     }
 
-    public String preProcess(String content) {
-        contentMap.clear();
-        if (patterns.size() > 0) {
+    /**
+     * Put the values replaced by {@link #preProcess(String)} back into the
+     * (translated) content. Numbered markers and tags are replaced by the
+     * value with that number, wherever they now are. Un-numbered markers
+     * (from content processed by older versions) are replaced by the values in
+     * order.
+     */
+    public String postProcess(String content, List<String> values) {
+        if (values.isEmpty())
+            return content;
+        Matcher m = getMarkerPattern().matcher(content);
+        StringBuilder sb = new StringBuilder(content.length() + 16 * values.size());
+        boolean[] restored = new boolean[values.size()];
+        int next = 0;
+        int last = 0;
+        while (m.find()) {
+            String number = null;
+            for (int g = 1; g <= m.groupCount() && number == null; g++) {
+                number = m.group(g);
+            }
+            int idx = number == null ? next++ : Integer.parseInt(number);
+            if (idx >= values.size()) {
+                throw new RuntimeException("Found an untranslateable string for variable " + idx + ", but there are only "
+                                + values.size() + " variables. The string we were given was '" + content + "'.");
+            }
+            sb.append(content, last, m.start());
+            sb.append(values.get(idx));
+            restored[idx] = true;
+            last = m.end();
+        }
+        sb.append(content, last, content.length());
+        for (int i = 0; i < restored.length; i++) {
+            if (!restored[i]) {
+                throw new RuntimeException("Expected to find an untranslateable string, but there was not one. The string we were given was '" + content + "'. So far, we replace variables so it contains '" + sb + "'. The content map contains " + values.size() + " variables that should be replaced.");
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The part of the marker that carries the number. This is the last
+     * untranslatable string if it is part of the first (i.e. the text left if
+     * the translator strips the mark-up), otherwise the whole marker.
+     */
+    private String getCore() {
+        String marker = untranslatableStrings[0];
+        String last = untranslatableStrings[untranslatableStrings.length - 1];
+        return marker.indexOf(last) == -1 ? marker : last;
+    }
+
+    private Pattern getMarkerPattern() {
+        Pattern p = markers;
+        if (p == null) {
+            String core = getCore();
             StringBuilder b = new StringBuilder();
-            for (String p : patterns) {
+            for (String s : untranslatableStrings) {
                 if (b.length() > 0) {
                     b.append("|");
                 }
-                b.append(p);
-            }
-            Pattern p = Pattern.compile(b.toString());
-            Matcher m = p.matcher(content);
-            StringBuffer sb = new StringBuffer();
-            while (m.find()) {
-                String match = m.group();
-                contentMap.add(match);
-                m.appendReplacement(sb, untranslatableStrings[0]);
+                int idx = s.indexOf(core);
+                if (idx == -1) {
+                    b.append(Pattern.quote(s)).append("(?:(\\d+)_)?");
+                } else {
+                    if (idx > 0)
+                        b.append(Pattern.quote(s.substring(0, idx)));
+                    b.append(Pattern.quote(core)).append("(?:(\\d+)_)?");
+                    if (idx + core.length() < s.length())
+                        b.append(Pattern.quote(s.substring(idx + core.length())));
+                }
             }
-            m.appendTail(sb);
-            content = m.replaceAll(untranslatableStrings[0]);
+            /* Always, as what is cached may have been sent either way */
+            b.append("|").append(TAG_PATTERN);
+            markers = p = Pattern.compile(b.toString());
         }
-        return content;
+        return p;
     }
 
-    public String postProcess(String content) {
-        String originalContent = content;
-        int idx;
-        int i;
-        for (String s : contentMap) {
-            idx = -1;
-            i = 0;
-            while(idx == -1 && i < untranslatableStrings.length) {
-                idx = content.indexOf(untranslatableStrings[i]);
-                if(idx == -1)
-                   i++;
-            }
-            if(idx == -1) {
-                throw new RuntimeException("Expected to find an untranslateable string, but there was not one. The string we were given was '" + originalContent + "'. So far, we replace variables so it contains '" + content + "'. The content map contains " + contentMap.size() + " variables that should be replaced.");
+    private Pattern getPattern() {
+        Pattern p = compiled;
+        if (p == null) {
+            synchronized (this) {
+                if (compiled == null && !patterns.isEmpty()) {
+                    StringBuilder b = new StringBuilder();
+                    for (String s : patterns) {
+                        if (b.length() > 0) {
+                            b.append("|");
+                        }
+                        b.append(s);
+                    }
+                    compiled = Pattern.compile(b.toString());
+                }
+                p = compiled;
             }
-            content = content.substring(0, idx) + s + content.substring(idx + untranslatableStrings[i].length());
         }
-        return content;
+        return p;
     }
 }
@@ -0,0 +1,361 @@
+package com.nervepoint.googletranslate;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Gettext <code>.po</code> catalogs, which are always UTF-8. A message is
+ * keyed by its <code>msgid</code>, preceded by its <code>msgctxt</code> and
+ * an EOT character (U+0004) if it has one, as gettext does. Its value is its
+ * <code>msgstr</code>, or its <code>msgid</code> if that is empty, so both
+ * templates and catalogs already in the source language can be translated.
+ * The plural of a message is a second entry, keyed by the message's key, a
+ * NUL character (U+0000) and <code>msgid_plural</code>.
+ * <p>
+ * A translation is the source with only the <code>msgstr</code> lines
+ * replaced (and the <code>Language</code> and <code>Plural-Forms</code> of the
+ * header), keeping all comments, references and flags. Messages with no
+ * translation get an empty <code>msgstr</code>, which gettext treats as
+ * untranslated.
+ * <p>
+ * A plural message gets as many forms as the target language has, the first
+ * being the translation of <code>msgid</code> and the rest all the translation
+ * of <code>msgid_plural</code>. For a language whose plural rules are not
+ * known, the header has no <code>Plural-Forms</code> and all but the first
+ * form are left empty for a translator to fill in.
+ */
+final class PoFormat implements BundleFormat {
+
+    static final String EXTENSION = ".po";
+
+    private static final Pattern LANGUAGE = Pattern.compile("\"Language:[^\"\\\\]*\\\\n\"");
+    private static final Pattern PLURAL_FORMS = Pattern.compile("\"Plural-Forms:[^\"\\\\]*\\\\n\"");
+
+    /** The Plural-Forms of each language, as gettext's documentation gives them */
+    private static final Map<String, String> PLURALS = new HashMap<String, String>();
+
+    static {
+        plurals("nplurals=1; plural=0;", "id", "ja", "km", "ko", "lo", "ms", "my", "th", "vi", "zh");
+        plurals("nplurals=2; plural=(n != 1);", "af", "az", "bg", "bn", "ca", "da", "de", "el", "en", "eo", "es",
+                        "et", "eu", "fi", "fy", "gl", "gu", "he", "hi", "it", "ka", "kk", "kn", "ml", "mn", "mr",
+                        "nb", "ne", "nl", "nn", "no", "pa", "pt", "si", "so", "sq", "sv", "sw", "ta", "te", "tr",
+                        "ur", "uz");
+        plurals("nplurals=2; plural=(n > 1);", "am", "fa", "fil", "fr", "hy", "pt_BR", "tl");
+        plurals("nplurals=2; plural=(n%10!=1 || n%100==11);", "is");
+        plurals("nplurals=3; plural=(n%10==1 && n%100!=11 ? 0 : n%10>=2 && n%10<=4 && (n%100<10 || n%100>=20) "
+                        + "? 1 : 2);", "be", "bs", "hr", "ru", "sr", "uk");
+        plurals("nplurals=3; plural=(n==1 ? 0 : n%10>=2 && n%10<=4 && (n%100<10 || n%100>=20) ? 1 : 2);", "pl");
+        plurals("nplurals=3; plural=(n==1) ? 0 : (n>=2 && n<=4) ? 1 : 2;", "cs", "sk");
+        plurals("nplurals=3; plural=(n%10==1 && n%100!=11 ? 0 : n%10>=2 && (n%100<10 || n%100>=20) ? 1 : 2);",
+                        "lt");
+        plurals("nplurals=3; plural=(n%10==1 && n%100!=11 ? 0 : n != 0 ? 1 : 2);", "lv");
+        plurals("nplurals=3; plural=(n==1 ? 0 : (n==0 || (n%100 > 0 && n%100 < 20)) ? 1 : 2);", "ro");
+        plurals("nplurals=4; plural=(n%100==1 ? 0 : n%100==2 ? 1 : n%100==3 || n%100==4 ? 2 : 3);", "sl");
+        plurals("nplurals=4; plural=(n==1) ? 0 : (n==2) ? 1 : (n != 8 && n != 11) ? 2 : 3;", "cy");
+        plurals("nplurals=5; plural=n==1 ? 0 : n==2 ? 1 : (n>2 && n<7) ? 2 :(n>6 && n<11) ? 3 : 4;", "ga");
+        plurals("nplurals=6; plural=(n==0 ? 0 : n==1 ? 1 : n==2 ? 2 : n%100>=3 && n%100<=10 ? 3 : n%100>=11 ? 4 "
+                        + ": 5);", "ar");
+    }
+
+    private static final class Message {
+        StringBuilder context;
+        StringBuilder id;
+        StringBuilder plural;
+        List<StringBuilder> strings = new ArrayList<StringBuilder>(1);
+
+        boolean isHeader() {
+            return context == null && id != null && id.length() == 0;
+        }
+
+        String key() {
+            return context == null ? id.toString() : context + "\u0004" + id;
+        }
+
+        String string(int index, StringBuilder fallback) {
+            if (index < strings.size() && strings.get(index).length() > 0)
+                return strings.get(index).toString();
+            return fallback.toString();
+        }
+    }
+
+    /**
+     * Receives a catalog a line at a time, other than the <code>msgstr</code>
+     * lines of each message, which are given with the message once it is
+     * complete.
+     */
+    private interface Lines {
+        void line(String line) throws IOException;
+
+        void message(Message message, List<String> strings) throws IOException;
+    }
+
+    @Override
+    public String getExtension() {
+        return EXTENSION;
+    }
+
+    @Override
+    public void read(File file, final Handler handler) throws IOException {
+        scan(file, new Lines() {
+            @Override
+            public void line(String line) {
+            }
+
+            @Override
+            public void message(Message message, List<String> strings) throws IOException {
+                if (message.isHeader())
+                    return;
+                String key = message.key();
+                handler.entry(key, message.string(0, message.id));
+                if (message.plural != null)
+                    handler.entry(key + "\u0000" + message.plural, message.string(1, message.plural));
+            }
+        });
+    }
+
+    @Override
+    public void write(File source, final String language, final Map<String, String> translations, String comment,
+                      boolean utf8, OutputStream out) throws IOException {
+        final Writer w = new BufferedWriter(new OutputStreamWriter(out, PropertiesWriter.UTF8));
+        final String plurals = plurals(language);
+        final int forms = plurals == null ? 0 : Integer.parseInt(plurals.substring(plurals.indexOf('=') + 1,
+                        plurals.indexOf(';')));
+        if (comment != null) {
+            w.write("# " + comment.replace("\n", "\n# ") + "\n");
+        }
+        scan(source, new Lines() {
+            @Override
+            public void line(String line) throws IOException {
+                w.write(line);
+                w.write('\n');
+            }
+
+            @Override
+            public void message(Message message, List<String> strings) throws IOException {
+                if (message.isHeader()) {
+                    String replacement = Matcher.quoteReplacement("\"Language: " + language + "\\n\"");
+                    String pluralForms = plurals == null ? "" : "\"Plural-Forms: " + plurals + "\\n\"";
+                    boolean hasPluralForms = false;
+                    for (String s : strings) {
+                        Matcher m = PLURAL_FORMS.matcher(s);
+                        if (m.find()) {
+                            hasPluralForms = true;
+                            s = m.replaceAll(Matcher.quoteReplacement(pluralForms));
+                            if (s.trim().length() == 0)
+                                continue;
+                        }
+                        w.write(LANGUAGE.matcher(s).replaceAll(replacement));
+                        w.write('\n');
+                    }
+                    if (!hasPluralForms && plurals != null) {
+                        w.write(pluralForms);
+                        w.write('\n');
+                    }
+                    return;
+                }
+                String key = message.key();
+                if (message.plural == null) {
+                    string(w, "msgstr", translations.get(key));
+                } else if (plurals == null) {
+                    int forms = Math.max(2, message.strings.size());
+                    for (int i = 0; i < forms; i++) {
+                        string(w, "msgstr[" + i + "]", i == 0 ? translations.get(key) : null);
+                    }
+                } else {
+                    String singular = translations.get(key);
+                    String plural = translations.get(key + "\u0000" + message.plural);
+                    if (forms == 1) {
+                        /* One form for every number, which is more like the plural */
+                        string(w, "msgstr[0]", plural == null ? singular : plural);
+                        return;
+                    }
+                    for (int i = 0; i < forms; i++) {
+                        string(w, "msgstr[" + i + "]", i == 0 ? singular : plural);
+                    }
+                }
+            }
+        });
+        w.flush();
+    }
+
+    /**
+     * The Plural-Forms of a language such as <code>pl</code> or
+     * <code>pt-BR</code>, falling back to those of the language without its
+     * country, or <code>null</code> if not known.
+     */
+    static String plurals(String language) {
+        String normalized = language.replace('-', '_');
+        String plurals = PLURALS.get(normalized);
+        int idx = normalized.indexOf('_');
+        if (plurals == null && idx != -1)
+            plurals = PLURALS.get(normalized.substring(0, idx));
+        return plurals;
+    }
+
+    private static void plurals(String plurals, String... languages) {
+        for (String language : languages) {
+            PLURALS.put(language, plurals);
+        }
+    }
+
+    private static void scan(File file, Lines lines) throws IOException {
+        BufferedReader r = new BufferedReader(new InputStreamReader(new FileInputStream(file), PropertiesWriter.UTF8));
+        try {
+            Message message = null;
+            StringBuilder current = null;
+            List<String> strings = null;
+            String line;
+            int number = 0;
+            while ((line = r.readLine()) != null) {
+                number++;
+                String trimmed = line.trim();
+                if (trimmed.startsWith("\"")) {
+                    /* Carries on the string started on an earlier line */
+                    if (current == null)
+                        throw new IOException("Unexpected string at line " + number + " of " + file);
+                    current.append(unquote(trimmed, file, number));
+                    if (strings == null)
+                        lines.line(line);
+                    else
+                        strings.add(line);
+                    continue;
+                }
+                if (strings != null && !trimmed.startsWith("msgstr")) {
+                    lines.message(message, strings);
+                    message = null;
+                    strings = null;
+                }
+                current = null;
+                if (trimmed.length() == 0 || trimmed.startsWith("#")) {
+                    lines.line(line);
+                    continue;
+                }
+
+                int idx = trimmed.indexOf(' ');
+                String keyword = idx == -1 ? trimmed : trimmed.substring(0, idx);
+                current = new StringBuilder(unquote(idx == -1 ? "" : trimmed.substring(idx + 1).trim(), file,
+                                number));
+                if (message == null)
+                    message = new Message();
+                if (keyword.equals("msgctxt")) {
+                    message.context = current;
+                } else if (keyword.equals("msgid")) {
+                    message.id = current;
+                } else if (keyword.equals("msgid_plural")) {
+                    message.plural = current;
+                } else if (keyword.startsWith("msgstr") && message.id != null) {
+                    message.strings.add(current);
+                    if (strings == null)
+                        strings = new ArrayList<String>(1);
+                    strings.add(line);
+                    continue;
+                } else {
+                    throw new IOException("Unexpected '" + keyword + "' at line " + number + " of " + file);
+                }
+                lines.line(line);
+            }
+            if (strings != null)
+                lines.message(message, strings);
+        } finally {
+            r.close();
+        }
+    }
+
+    private static void string(Writer w, String keyword, String value) throws IOException {
+        if (value == null)
+            value = "";
+        w.write(keyword);
+        int nl = value.indexOf('\n');
+        if (nl == -1 || nl == value.length() - 1) {
+            w.write(" \"" + escape(value) + "\"\n");
+            return;
+        }
+        /* Several lines, written the way gettext's tools do */
+        w.write(" \"\"\n");
+        int start = 0;
+        while (start < value.length()) {
+            int end = value.indexOf('\n', start);
+            end = end == -1 ? value.length() : end + 1;
+            w.write("\"" + escape(value.substring(start, end)) + "\"\n");
+            start = end;
+        }
+    }
+
+    private static String unquote(String s, File file, int number) throws IOException {
+        if (s.length() < 2 || s.charAt(0) != '"' || s.charAt(s.length() - 1) != '"')
+            throw new IOException("Expected a quoted string at line " + number + " of " + file);
+        StringBuilder b = new StringBuilder(s.length());
+        for (int i = 1; i < s.length() - 1; i++) {
+            char c = s.charAt(i);
+            if (c != '\\' || i + 2 == s.length()) {
+                b.append(c);
+                continue;
+            }
+            c = s.charAt(++i);
+            switch (c) {
+            case 'n':
+                b.append('\n');
+                break;
+            case 't':
+                b.append('\t');
+                break;
+            case 'r':
+                b.append('\r');
+                break;
+            case 'f':
+                b.append('\f');
+                break;
+            case 'v':
+                b.append('\u000b');
+                break;
+            case 'b':
+                b.append('\b');
+                break;
+            case 'a':
+                b.append('\u0007');
+                break;
+            default:
+                b.append(c);
+            }
+        }
+        return b.toString();
+    }
+
+    private static String escape(String s) {
+        StringBuilder b = new StringBuilder(s.length() + 8);
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+            case '"':
+            case '\\':
+                b.append('\\').append(c);
+                break;
+            case '\n':
+                b.append("\\n");
+                break;
+            case '\t':
+                b.append("\\t");
+                break;
+            case '\r':
+                b.append("\\r");
+                break;
+            default:
+                b.append(c);
+            }
+        }
+        return b.toString();
+    }
+}
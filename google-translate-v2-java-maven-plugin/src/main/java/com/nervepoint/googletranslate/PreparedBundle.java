@@ -0,0 +1,84 @@
+package com.nervepoint.googletranslate;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A source bundle that has been read and pre-processed ready for translation.
+ * None of this depends on the target language, so it is done once per bundle
+ * and shared by every language.
+ */
+class PreparedBundle {
+
+    static class Entry {
+        final String key;
+        final String original;
+        /* Whitespace around the value that the translation should keep */
+        final String leading;
+        final String trailing;
+        final String processed;
+        final String canonical;
+        final List<String> placeholders;
+        final String hash;
+        final String format;
+        final String originalFormat;
+        /* How much shorter processed is for using tags rather than spans */
+        final int savedCharacters;
+        private volatile String md5;
+
+        Entry(String key, String original, String leading, String trailing, String processed, String canonical,
+              List<String> placeholders, String format, String originalFormat, int savedCharacters) {
+            this.key = key;
+            this.original = original;
+            this.leading = leading;
+            this.trailing = trailing;
+            this.processed = processed;
+            this.canonical = canonical;
+            this.placeholders = Collections.unmodifiableList(placeholders);
+            this.hash = ContentHash.of(canonical);
+            this.format = format;
+            this.originalFormat = originalFormat;
+            this.savedCharacters = savedCharacters;
+        }
+
+        /**
+         * A translation of this entry, with the whitespace the source value
+         * had around it put back.
+         */
+        String surround(String translated) {
+            if (leading.length() == 0 && trailing.length() == 0)
+                return translated;
+            return leading + translated + trailing;
+        }
+
+        /**
+         * The hash earlier versions keyed translations by. This is only needed
+         * when there is no translation under the current hash, so is worked
+         * out when first asked for.
+         */
+        String getMd5() {
+            String h = md5;
+            if (h == null) {
+                md5 = h = ContentHash.md5(canonical);
+            }
+            return h;
+        }
+    }
+
+    private final File sourceFile;
+    private final List<Entry> entries;
+
+    PreparedBundle(File sourceFile, List<Entry> entries) {
+        this.sourceFile = sourceFile;
+        this.entries = Collections.unmodifiableList(entries);
+    }
+
+    File getSourceFile() {
+        return sourceFile;
+    }
+
+    List<Entry> getEntries() {
+        return entries;
+    }
+}
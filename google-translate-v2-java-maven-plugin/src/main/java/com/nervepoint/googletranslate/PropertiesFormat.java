@@ -0,0 +1,189 @@
+package com.nervepoint.googletranslate;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Map;
+
+/**
+ * Java <code>.properties</code> bundles. These are read the way
+ * {@link java.util.Properties#load(java.io.InputStream)} reads them (as
+ * ISO-8859-1, with continued lines and escapes), but a line at a time. A
+ * translation keeps the source's comments and blank lines, with each entry
+ * written on one line.
+ */
+final class PropertiesFormat implements BundleFormat {
+
+    static final String EXTENSION = ".properties";
+
+    /**
+     * Receives each line of a bundle, with the key and value if it is an
+     * entry. An entry continued over several lines is one line here.
+     */
+    private interface Lines {
+        void line(String raw, String key, String value) throws IOException;
+    }
+
+    @Override
+    public String getExtension() {
+        return EXTENSION;
+    }
+
+    @Override
+    public void read(File file, final Handler handler) throws IOException {
+        scan(file, new Lines() {
+            @Override
+            public void line(String raw, String key, String value) throws IOException {
+                if (key != null)
+                    handler.entry(key, value);
+            }
+        });
+    }
+
+    @Override
+    public void write(File source, String language, final Map<String, String> translations, String comment,
+                      final boolean utf8, OutputStream out) throws IOException {
+        final Writer w = new BufferedWriter(new OutputStreamWriter(out, utf8 ? PropertiesWriter.UTF8
+                        : PropertiesWriter.ISO_8859_1));
+        final StringBuilder b = new StringBuilder();
+        if (comment != null) {
+            PropertiesWriter.comment(b, comment, utf8);
+            w.write(b.toString());
+        }
+        scan(source, new Lines() {
+            @Override
+            public void line(String raw, String key, String value) throws IOException {
+                if (key == null) {
+                    w.write(raw);
+                    w.write('\n');
+                } else {
+                    String translated = translations.get(key);
+                    if (translated != null) {
+                        b.setLength(0);
+                        PropertiesWriter.entry(b, key, translated, utf8);
+                        w.write(b.toString());
+                    }
+                }
+            }
+        });
+        w.flush();
+    }
+
+    private static void scan(File file, Lines lines) throws IOException {
+        BufferedReader r = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+                        PropertiesWriter.ISO_8859_1));
+        try {
+            StringBuilder logical = new StringBuilder();
+            String line;
+            while ((line = r.readLine()) != null) {
+                int start = skipWhitespace(line, 0);
+                if (start == line.length() || line.charAt(start) == '#' || line.charAt(start) == '!') {
+                    /* Blank or a comment, neither of which can be continued */
+                    lines.line(line, null, null);
+                    continue;
+                }
+                logical.setLength(0);
+                logical.append(line, start, line.length());
+                while (isContinued(logical)) {
+                    logical.setLength(logical.length() - 1);
+                    String next = r.readLine();
+                    if (next == null)
+                        break;
+                    logical.append(next, skipWhitespace(next, 0), next.length());
+                }
+                try {
+                    entry(logical, line, lines);
+                } catch (IllegalArgumentException iae) {
+                    throw new IOException("Could not read " + file + ". " + iae.getMessage(), iae);
+                }
+            }
+        } finally {
+            r.close();
+        }
+    }
+
+    private static void entry(CharSequence s, String raw, Lines lines) throws IOException {
+        int len = s.length();
+        int i = 0;
+        boolean escaped = false;
+        for (; i < len; i++) {
+            char c = s.charAt(i);
+            if (escaped)
+                escaped = false;
+            else if (c == '\\')
+                escaped = true;
+            else if (c == '=' || c == ':' || isWhitespace(c))
+                break;
+        }
+        int keyEnd = i;
+        i = skipWhitespace(s, i);
+        if (i < len && (s.charAt(i) == '=' || s.charAt(i) == ':'))
+            i = skipWhitespace(s, i + 1);
+        lines.line(raw, unescape(s, 0, keyEnd), unescape(s, i, len));
+    }
+
+    private static String unescape(CharSequence s, int start, int end) {
+        StringBuilder b = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c != '\\' || i + 1 == end) {
+                b.append(c);
+                continue;
+            }
+            c = s.charAt(++i);
+            switch (c) {
+            case 't':
+                b.append('\t');
+                break;
+            case 'n':
+                b.append('\n');
+                break;
+            case 'r':
+                b.append('\r');
+                break;
+            case 'f':
+                b.append('\f');
+                break;
+            case 'u':
+                if (i + 4 >= end)
+                    throw new IllegalArgumentException("Malformed \\uxxxx encoding.");
+                try {
+                    b.append((char) Integer.parseInt(s.subSequence(i + 1, i + 5).toString(), 16));
+                } catch (NumberFormatException nfe) {
+                    throw new IllegalArgumentException("Malformed \\uxxxx encoding.");
+                }
+                i += 4;
+                break;
+            default:
+                b.append(c);
+            }
+        }
+        return b.toString();
+    }
+
+    /* A line ending with an odd number of backslashes carries on to the next */
+    private static boolean isContinued(CharSequence s) {
+        int n = 0;
+        for (int i = s.length() - 1; i >= 0 && s.charAt(i) == '\\'; i--) {
+            n++;
+        }
+        return n % 2 == 1;
+    }
+
+    private static int skipWhitespace(CharSequence s, int i) {
+        while (i < s.length() && isWhitespace(s.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\f';
+    }
+}
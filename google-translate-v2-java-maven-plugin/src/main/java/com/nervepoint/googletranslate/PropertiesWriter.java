@@ -0,0 +1,164 @@
+package com.nervepoint.googletranslate;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.TreeSet;
+
+/**
+ * Writes properties files that only depend on their content. Unlike
+ * {@link Properties#store(java.io.OutputStream, String)} the keys are sorted,
+ * there is no date comment and lines always end with <code>\n</code>, so the
+ * same properties always produce the same bytes. Escaping is the same as
+ * {@link Properties#store(java.io.OutputStream, String)}, except that when
+ * writing UTF-8 (which Java 9 and later read resource bundles as) characters
+ * outside of ASCII are written as they are rather than as <code>\\uXXXX</code>.
+ */
+final class PropertiesWriter {
+
+    static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private PropertiesWriter() {
+    }
+
+    static byte[] format(Properties properties, String comment, boolean utf8) {
+        StringBuilder b = new StringBuilder(properties.size() * 64);
+        if (comment != null) {
+            comment(b, comment, utf8);
+        }
+        for (String key : new TreeSet<String>(properties.stringPropertyNames())) {
+            entry(b, key, properties.getProperty(key), utf8);
+        }
+        return b.toString().getBytes(utf8 ? UTF8 : ISO_8859_1);
+    }
+
+    static void comment(StringBuilder b, String comment, boolean utf8) {
+        b.append('#');
+        escape(b, comment, false, utf8, true);
+        b.append('\n');
+    }
+
+    static void entry(StringBuilder b, String key, String value, boolean utf8) {
+        escape(b, key, true, utf8, false);
+        b.append('=');
+        escape(b, value, false, utf8, false);
+        b.append('\n');
+    }
+
+    /**
+     * Write the content to a file, unless the file already has exactly that
+     * content, in which case it (and its modification time) is left alone.
+     * The content is written to a temporary file which is then renamed, so
+     * anything reading the file sees either the old or the new content, never
+     * part of it.
+     *
+     * @return <code>true</code> if the file was written
+     */
+    static boolean write(File file, byte[] content) throws IOException {
+        if (hasContent(file, content))
+            return false;
+        File dir = file.getAbsoluteFile().getParentFile();
+        dir.mkdirs();
+        File tmp = new File(dir, "." + file.getName() + "." + Long.toHexString(Thread.currentThread().getId()) + "."
+                        + Long.toHexString(System.nanoTime()) + ".tmp");
+        try {
+            FileOutputStream out = new FileOutputStream(tmp);
+            try {
+                out.write(content);
+            } finally {
+                out.close();
+            }
+            try {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                                StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException amnse) {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            tmp.delete();
+        }
+        return true;
+    }
+
+    static boolean hasContent(File file, byte[] content) throws IOException {
+        if (!file.isFile() || file.length() != content.length)
+            return false;
+        byte[] existing = new byte[content.length];
+        InputStream in = new FileInputStream(file);
+        try {
+            int off = 0;
+            int r;
+            while (off < existing.length && (r = in.read(existing, off, existing.length - off)) != -1) {
+                off += r;
+            }
+        } finally {
+            in.close();
+        }
+        return Arrays.equals(existing, content);
+    }
+
+    private static void escape(StringBuilder b, String s, boolean key, boolean utf8, boolean comment) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (comment) {
+                if (c == '\n' || c == '\r') {
+                    b.append("\n#");
+                    if (c == '\r' && i + 1 < s.length() && s.charAt(i + 1) == '\n')
+                        i++;
+                } else if (c > 0x7e && !utf8) {
+                    unicode(b, c);
+                } else {
+                    b.append(c);
+                }
+                continue;
+            }
+            switch (c) {
+            case ' ':
+                if (key || i == 0)
+                    b.append('\\');
+                b.append(c);
+                break;
+            case '\t':
+                b.append("\\t");
+                break;
+            case '\n':
+                b.append("\\n");
+                break;
+            case '\r':
+                b.append("\\r");
+                break;
+            case '\f':
+                b.append("\\f");
+                break;
+            case '\\':
+            case '=':
+            case ':':
+            case '#':
+            case '!':
+                b.append('\\').append(c);
+                break;
+            default:
+                if (c < 0x20 || (c > 0x7e && !utf8))
+                    unicode(b, c);
+                else
+                    b.append(c);
+            }
+        }
+    }
+
+    private static void unicode(StringBuilder b, char c) {
+        b.append("\\u").append(HEX[(c >> 12) & 0xf]).append(HEX[(c >> 8) & 0xf]).append(HEX[(c >> 4) & 0xf])
+                        .append(HEX[c & 0xf]);
+    }
+}
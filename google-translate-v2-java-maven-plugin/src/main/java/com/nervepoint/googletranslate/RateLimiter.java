@@ -0,0 +1,166 @@
+package com.nervepoint.googletranslate;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides when a request may be sent. A request must wait for a free slot, as
+ * only so many may be in flight at once, and then for enough request and
+ * character tokens, which are added to their buckets at a fixed rate.
+ * <p>
+ * The number of slots adapts to how the service responds (additive increase,
+ * multiplicative decrease). It starts at the maximum, is halved whenever the
+ * service says it is being sent too much, and grows back by about one for
+ * each full window of requests that succeed. Only the first throttled response
+ * for requests sent before the last decrease counts, so a burst of rejections
+ * caused by the same overload only halves it once.
+ */
+class RateLimiter {
+
+    private final int maxConcurrency;
+    private final Bucket requests;
+    private final Bucket characters;
+    private final long retryDelay;
+    private final long maxRetryDelay;
+    private final Random random = new Random();
+    private double concurrency;
+    private int active;
+    private long lastDecrease;
+
+    /**
+     * @param maxConcurrency most requests in flight at once
+     * @param requestsPerSecond requests that may be started per second, 0 or
+     *            less for no limit
+     * @param charactersPerSecond characters that may be sent per second, 0 or
+     *            less for no limit
+     * @param retryDelay delay before the first retry, in milliseconds
+     * @param maxRetryDelay longest delay before any retry, in milliseconds
+     */
+    RateLimiter(int maxConcurrency, double requestsPerSecond, double charactersPerSecond, long retryDelay,
+                long maxRetryDelay) {
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.requests = requestsPerSecond > 0 ? new Bucket(requestsPerSecond) : null;
+        this.characters = charactersPerSecond > 0 ? new Bucket(charactersPerSecond) : null;
+        this.retryDelay = Math.max(1, retryDelay);
+        this.maxRetryDelay = Math.max(this.retryDelay, maxRetryDelay);
+        concurrency = this.maxConcurrency;
+        lastDecrease = System.nanoTime();
+    }
+
+    /**
+     * Wait until a request of the given size may be sent. Every call must be
+     * followed by a call to {@link #release()}.
+     *
+     * @return a permit to pass to {@link #throttled(long)}
+     */
+    synchronized long acquire(int size) throws InterruptedException {
+        while (active >= getConcurrency()) {
+            wait();
+        }
+        active++;
+        try {
+            long permit = System.nanoTime();
+            long waitFor;
+            while ((waitFor = Math.max(wait(requests, 1), wait(characters, size))) > 0) {
+                TimeUnit.NANOSECONDS.timedWait(this, waitFor);
+            }
+            take(requests, 1);
+            take(characters, size);
+            return permit;
+        } catch (InterruptedException ie) {
+            active--;
+            notifyAll();
+            throw ie;
+        }
+    }
+
+    synchronized void release() {
+        active--;
+        notifyAll();
+    }
+
+    /**
+     * A request succeeded, allow slightly more in flight.
+     */
+    synchronized void succeeded() {
+        concurrency = Math.min(maxConcurrency, concurrency + 1 / concurrency);
+        notifyAll();
+    }
+
+    /**
+     * A request was rejected because too much is being sent.
+     *
+     * @param permit the permit the request was sent with
+     * @return <code>true</code> if the number of requests in flight was reduced
+     */
+    synchronized boolean throttled(long permit) {
+        if (permit - lastDecrease < 0)
+            return false;
+        concurrency = Math.max(1, concurrency / 2);
+        lastDecrease = System.nanoTime();
+        return true;
+    }
+
+    /**
+     * How long to wait before making a failed request again. This doubles with
+     * each attempt up to a limit, and a random part of it is taken off so that
+     * requests that failed together are not all retried together.
+     *
+     * @param attempt the number of attempts that have failed, less one
+     * @param retryAfter how long the service asked us to wait, in milliseconds
+     * @return milliseconds to wait
+     */
+    long backoff(int attempt, long retryAfter) {
+        long max = Math.min(maxRetryDelay, retryDelay << Math.min(attempt, 30));
+        long half = max / 2;
+        long jitter;
+        synchronized (random) {
+            jitter = (long) (random.nextDouble() * (max - half));
+        }
+        return Math.max(retryAfter, half + jitter);
+    }
+
+    synchronized int getConcurrency() {
+        return (int) concurrency;
+    }
+
+    private static long wait(Bucket bucket, int size) {
+        return bucket == null ? 0 : bucket.waitFor(size);
+    }
+
+    private static void take(Bucket bucket, int size) {
+        if (bucket != null)
+            bucket.take(size);
+    }
+
+    /**
+     * Tokens added at a fixed rate, holding at most one second's worth. A
+     * request bigger than that only waits for a full bucket, and leaves it in
+     * debt.
+     */
+    static class Bucket {
+        private final double rate;
+        private double tokens;
+        private long updated = System.nanoTime();
+
+        Bucket(double rate) {
+            this.rate = rate;
+            this.tokens = rate;
+        }
+
+        /**
+         * Nanoseconds until there are enough tokens for the given size.
+         */
+        long waitFor(int size) {
+            long now = System.nanoTime();
+            tokens = Math.min(rate, tokens + (now - updated) * rate / 1e9);
+            updated = now;
+            double needed = Math.min(size, rate) - tokens;
+            return needed <= 0 ? 0 : (long) Math.ceil(needed * 1e9 / rate);
+        }
+
+        void take(int size) {
+            tokens -= size;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.nervepoint.googletranslate;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * A translation cache shared between machines, asked for what the local
+ * translation memory does not have before anything is sent to the backend.
+ * Keys are the same as {@link TranslationMemory} keys, so include the backend,
+ * languages, format and a hash of the text. Calls may be made from more than
+ * one thread, and may be abandoned (by interrupting the thread) if they take
+ * too long.
+ */
+public interface RemoteCache {
+
+    /**
+     * The most keys to ask for in one call.
+     */
+    int getMaxKeys();
+
+    void open() throws IOException;
+
+    /**
+     * Look up translations.
+     *
+     * @return the translations found, by key
+     */
+    Map<String, String> get(Collection<String> keys) throws IOException;
+
+    /**
+     * Store translations.
+     */
+    void put(Map<String, String> translations) throws IOException;
+
+    void close() throws IOException;
+}
@@ -0,0 +1,160 @@
+package com.nervepoint.googletranslate;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.security.MessageDigest;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.type.TypeReference;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A small server for the protocol {@link HttpRemoteCache} uses, keeping the
+ * translations in a {@link FileRemoteCache}. Good enough for a team or a CI
+ * farm, or for trying out a remote cache.
+ * <p>
+ * Anything stored is served to every client, so with a {@link #setToken(String)
+ * token} set, only clients that send it (as
+ * <code>Authorization: Bearer [token]</code>) may look up or store
+ * translations. Run from the command line, the token is taken from the
+ * <code>REMOTE_CACHE_TOKEN</code> environment variable. Without one the
+ * server only listens on the loopback address, so is only of use to builds on
+ * the same machine.
+ * 
+ * <pre>
+ * java -cp [plugin classpath] com.nervepoint.googletranslate.RemoteCacheServer [port] [directory]
+ * </pre>
+ */
+public class RemoteCacheServer {
+
+    private static final TypeReference<Map<String, Collection<String>>> LOOKUP = new TypeReference<Map<String, Collection<String>>>() {
+    };
+    private static final TypeReference<Map<String, String>> STORE = new TypeReference<Map<String, String>>() {
+    };
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final FileRemoteCache cache;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private volatile String token;
+
+    public RemoteCacheServer(InetSocketAddress address, File dir) throws IOException {
+        cache = new FileRemoteCache(dir);
+        server = HttpServer.create(address, 0);
+        server.createContext("/lookup", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                if (!isAuthorized(exchange)) {
+                    respond(exchange, 401, null);
+                    return;
+                }
+                try {
+                    Map<String, Collection<String>> request = mapper.readValue(exchange.getRequestBody(), LOOKUP);
+                    Collection<String> keys = request == null ? null : request.get("keys");
+                    if (keys == null || keys.contains(null)) {
+                        respond(exchange, 400, new byte[0]);
+                        return;
+                    }
+                    respond(exchange, 200, mapper.writeValueAsBytes(cache.get(keys)));
+                } catch (IOException ioe) {
+                    respond(exchange, 400, new byte[0]);
+                }
+            }
+        });
+        server.createContext("/store", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                if (!isAuthorized(exchange)) {
+                    respond(exchange, 401, null);
+                    return;
+                }
+                try {
+                    Map<String, String> request = mapper.readValue(exchange.getRequestBody(), STORE);
+                    if (request == null || request.containsKey(null) || request.containsValue(null)) {
+                        respond(exchange, 400, new byte[0]);
+                        return;
+                    }
+                    cache.put(request);
+                    respond(exchange, 204, null);
+                } catch (IOException ioe) {
+                    respond(exchange, 400, new byte[0]);
+                }
+            }
+        });
+        server.setExecutor(executor);
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    /**
+     * The token clients must send, or <code>null</code> to serve any client.
+     */
+    public void setToken(String token) {
+        this.token = token;
+    }
+
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    public void start() throws IOException {
+        cache.open();
+        server.start();
+    }
+
+    public void stop() throws IOException {
+        server.stop(0);
+        executor.shutdownNow();
+        cache.close();
+    }
+
+    private boolean isAuthorized(HttpExchange exchange) throws IOException {
+        String expected = token;
+        if (expected == null)
+            return true;
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        if (header == null || !header.startsWith("Bearer "))
+            return false;
+        return MessageDigest.isEqual(expected.getBytes("UTF-8"), header.substring(7).getBytes("UTF-8"));
+    }
+
+    private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+        } else {
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+            exchange.sendResponseHeaders(status, body.length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(body);
+        }
+        exchange.close();
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8390;
+        File dir = new File(args.length > 1 ? args[1] : "i18n-remote-cache");
+        String token = System.getenv("REMOTE_CACHE_TOKEN");
+        if (token != null && token.length() == 0)
+            token = null;
+        InetSocketAddress address = token == null ? new InetSocketAddress(InetAddress.getLoopbackAddress(), port)
+                        : new InetSocketAddress(port);
+        RemoteCacheServer server = new RemoteCacheServer(address, dir);
+        server.setToken(token);
+        server.start();
+        System.out.println("Serving translations in " + dir.getAbsolutePath() + " on " + server.getAddress());
+        if (token == null)
+            System.out.println("Set REMOTE_CACHE_TOKEN to serve other machines");
+    }
+}
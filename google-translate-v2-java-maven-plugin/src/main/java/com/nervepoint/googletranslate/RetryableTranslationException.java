@@ -0,0 +1,38 @@
+package com.nervepoint.googletranslate;
+
+import java.io.IOException;
+
+/**
+ * Thrown by a {@link TranslationBackend} when a call failed but may work if
+ * made again later, such as when the service is over its rate limit or
+ * temporarily unavailable.
+ */
+public class RetryableTranslationException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final boolean throttled;
+    private final long retryAfter;
+
+    /**
+     * @param message description of the failure
+     * @param cause the underlying failure
+     * @param throttled <code>true</code> if the service said too many calls
+     *            are being made, so fewer should be made at once
+     * @param retryAfter how long the service asked us to wait before trying
+     *            again, in milliseconds (0 if it did not say)
+     */
+    public RetryableTranslationException(String message, Throwable cause, boolean throttled, long retryAfter) {
+        super(message, cause);
+        this.throttled = throttled;
+        this.retryAfter = retryAfter;
+    }
+
+    public boolean isThrottled() {
+        return throttled;
+    }
+
+    public long getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,105 @@
+package com.nervepoint.googletranslate;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A backend that does not translate anything, it just prefixes the text with
+ * the target language (e.g. <code>[fr] Save</code>). Each call can be made to
+ * take a fixed time, so batching and concurrency can be tried out without
+ * using the real service. Translations it makes are cached apart from real
+ * ones.
+ */
+public class StubTranslationBackend implements TranslationBackend {
+
+    public static final String NAME = "stub";
+
+    private int maxSources;
+    private int maxCharacters;
+    private long latency;
+    private final AtomicInteger calls = new AtomicInteger();
+    private final AtomicInteger characters = new AtomicInteger();
+
+    /**
+     * Create a stub that accepts as much in one call as Google does.
+     */
+    public StubTranslationBackend() {
+        this(128, 30000);
+    }
+
+    public StubTranslationBackend(int maxSources, int maxCharacters) {
+        this.maxSources = maxSources;
+        this.maxCharacters = maxCharacters;
+    }
+
+    public long getLatency() {
+        return latency;
+    }
+
+    /**
+     * Set how long each call takes, in milliseconds.
+     */
+    public void setLatency(long latency) {
+        this.latency = latency;
+    }
+
+    /**
+     * The number of calls made to {@link #translate(List, String, String, String)}.
+     */
+    public int getCalls() {
+        return calls.get();
+    }
+
+    /**
+     * The number of characters sent to be translated.
+     */
+    public int getCharacters() {
+        return characters.get();
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public int getMaxSources() {
+        return maxSources;
+    }
+
+    @Override
+    public int getMaxCharacters() {
+        return maxCharacters;
+    }
+
+    @Override
+    public void open() throws IOException {
+    }
+
+    @Override
+    public List<String> translate(List<String> texts, String sourceLanguage, String targetLanguage, String format)
+                    throws IOException {
+        calls.incrementAndGet();
+        if (latency > 0) {
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while translating.");
+            }
+        }
+        List<String> translated = new ArrayList<String>(texts.size());
+        for (String text : texts) {
+            characters.addAndGet(text.length());
+            translated.add("[" + targetLanguage + "] " + text);
+        }
+        return translated;
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+}
@@ -0,0 +1,72 @@
+package com.nervepoint.googletranslate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+
+/**
+ * Collects the log output of a single unit of work so that it may be written
+ * out in a predictable order, regardless of which thread ran the work or when
+ * it finished.
+ */
+class TaskLog {
+
+    private enum Level {
+        DEBUG, INFO, WARN, ERROR
+    }
+
+    private final List<Entry> entries = new ArrayList<Entry>();
+
+    void debug(String message) {
+        add(Level.DEBUG, message, null);
+    }
+
+    void info(String message) {
+        add(Level.INFO, message, null);
+    }
+
+    void warn(String message) {
+        add(Level.WARN, message, null);
+    }
+
+    void error(String message, Throwable exception) {
+        add(Level.ERROR, message, exception);
+    }
+
+    synchronized void flush(Logger logger) {
+        for (Entry e : entries) {
+            switch (e.level) {
+            case DEBUG:
+                logger.debug(e.message);
+                break;
+            case INFO:
+                logger.info(e.message);
+                break;
+            case WARN:
+                logger.warn(e.message);
+                break;
+            default:
+                logger.error(e.message, e.exception);
+                break;
+            }
+        }
+        entries.clear();
+    }
+
+    private synchronized void add(Level level, String message, Throwable exception) {
+        entries.add(new Entry(level, message, exception));
+    }
+
+    private static class Entry {
+        Level level;
+        String message;
+        Throwable exception;
+
+        Entry(Level level, String message, Throwable exception) {
+            this.level = level;
+            this.message = message;
+            this.exception = exception;
+        }
+    }
+}
@@ -6,6 +6,8 @@ public class Translatable {
 
 	private File base;
 	private File file;
+	private File targetDirectory;
+	private File cacheDir;
 
 	public Translatable(File file) {
 		this(null, file);
@@ -32,4 +34,28 @@ public class Translatable {
 		return base == null ? file.getName() : file.getAbsolutePath().substring(base.getAbsolutePath().length());
 	}
 
+	/**
+	 * Where to write the translations of this file, or <code>null</code> to
+	 * use the target directory of the {@link Translater}.
+	 */
+	public File getTargetDirectory() {
+		return targetDirectory;
+	}
+
+	public void setTargetDirectory(File targetDirectory) {
+		this.targetDirectory = targetDirectory;
+	}
+
+	/**
+	 * The cache directory for this file, or <code>null</code> to use the
+	 * cache directory of the {@link Translater}.
+	 */
+	public File getCacheDir() {
+		return cacheDir;
+	}
+
+	public void setCacheDir(File cacheDir) {
+		this.cacheDir = cacheDir;
+	}
+
 }
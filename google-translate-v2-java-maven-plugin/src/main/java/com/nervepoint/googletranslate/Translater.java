@@ -1,35 +1,41 @@
 package com.nervepoint.googletranslate;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.net.URI;
 import java.net.URISyntaxException;
-import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
+import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.lang3.StringEscapeUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
-import com.google.api.client.http.HttpTransport;
-import com.google.api.client.json.JsonFactory;
-import com.google.api.client.json.jackson2.JacksonFactory;
-import com.google.api.services.translate.Translate;
-import com.google.api.services.translate.TranslateRequestInitializer;
-import com.google.api.services.translate.model.TranslationsListResponse;
-import com.google.api.services.translate.model.TranslationsResource;
-
 public class Translater {
 
     public interface TranslatableProvider {
@@ -38,11 +44,7 @@ public class Translater {
 
     final static Logger LOG = LoggerFactory.getLogger(Translater.class);
 
-    private final JsonFactory JSON_FACTORY = JacksonFactory.getDefaultInstance();
-
-    private HttpTransport httpTransport;
-
-    private static Translate client;
+    private final static long MAX_RETRY_DELAY = 60000;
 
     private String apikey;
     private File targetDirectory = new File("target/classes");
@@ -55,11 +57,45 @@ public class Translater {
     private String format;
     private boolean useHtmlForNonTranslatable = true;
     private int maxSourcesPerCall = 10;
+    private int maxCharactersPerCall = 5000;
     private List<String> noTranslatePattern = new ArrayList<String>();
     private List<String> excludeKeys = new ArrayList<String>();
     private boolean failOnMissingCacheDir = true;
-    private PatternReplacer replacer;
+    private int threads = 4;
+    private int requestsInFlight = 4;
+    private boolean compressRequests = true;
+    private int maxRetries = 5;
+    private long retryDelay = 1000;
+    private double requestsPerSecond;
+    private double charactersPerSecond;
+    private String endpoint;
+    private String backend = GoogleTranslationBackend.NAME;
+    private TranslationBackend translationBackend;
+    private File metricsFile;
+    private String outputEncoding = "ISO-8859-1";
+    private List<String> bundleFormats = new ArrayList<String>();
+    private String placeholders;
+    private String remoteCacheUrl;
+    private String remoteCacheToken;
+    private RemoteCache remoteCache;
+    private long remoteCacheTimeout = 2000;
+    private boolean remoteCachePush = true;
+    private boolean plan;
+    private File planFile;
+    private long planLatency = 500;
+    private double costPerMillionCharacters = 20;
     private TranslatableProvider fileProvider;
+    private PatternReplacer replacer;
+    private RateLimiter limiter;
+    private TranslationBackend backendInUse;
+    private boolean backendOpened;
+    private TranslationPlan lastPlan;
+    private Map<File, CacheDir> caches;
+    private RemoteCache remoteInUse;
+    private Map<String, BundleFormat> formatsInUse;
+    private ExecutorService remoteExecutor;
+    private final List<Future<?>> pushes = new ArrayList<Future<?>>();
+    private TranslationMetrics metrics;
 
     public TranslatableProvider getFileProvider() {
         return fileProvider;
@@ -157,6 +193,14 @@ public class Translater {
         this.maxSourcesPerCall = maxSourcesPerCall;
     }
 
+    public int getMaxCharactersPerCall() {
+        return maxCharactersPerCall;
+    }
+
+    public void setMaxCharactersPerCall(int maxCharactersPerCall) {
+        this.maxCharactersPerCall = maxCharactersPerCall;
+    }
+
     public List<String> getNoTranslatePattern() {
         return noTranslatePattern;
     }
@@ -181,11 +225,306 @@ public class Translater {
         this.failOnMissingCacheDir = failOnMissingCacheDir;
     }
 
-    public void execute() throws IOException {
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public int getRequestsInFlight() {
+        return requestsInFlight;
+    }
+
+    public void setRequestsInFlight(int requestsInFlight) {
+        this.requestsInFlight = requestsInFlight;
+    }
+
+    public boolean isCompressRequests() {
+        return compressRequests;
+    }
+
+    public void setCompressRequests(boolean compressRequests) {
+        this.compressRequests = compressRequests;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    public long getRetryDelay() {
+        return retryDelay;
+    }
+
+    /**
+     * Set how long to wait before the first retry of a failed request, in
+     * milliseconds. This doubles for each further retry.
+     */
+    public void setRetryDelay(long retryDelay) {
+        this.retryDelay = retryDelay;
+    }
+
+    public double getRequestsPerSecond() {
+        return requestsPerSecond;
+    }
+
+    /**
+     * Set the most requests to start per second, 0 for no limit.
+     */
+    public void setRequestsPerSecond(double requestsPerSecond) {
+        this.requestsPerSecond = requestsPerSecond;
+    }
+
+    public double getCharactersPerSecond() {
+        return charactersPerSecond;
+    }
+
+    /**
+     * Set the most characters to send per second, 0 for no limit.
+     */
+    public void setCharactersPerSecond(double charactersPerSecond) {
+        this.charactersPerSecond = charactersPerSecond;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public void setEndpoint(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    public String getBackend() {
+        return backend;
+    }
+
+    /**
+     * Set the backend to translate with, either <code>google</code>,
+     * <code>stub</code> or the class name of a {@link TranslationBackend}.
+     */
+    public void setBackend(String backend) {
+        this.backend = backend;
+    }
+
+    public TranslationBackend getTranslationBackend() {
+        return translationBackend;
+    }
+
+    /**
+     * Set the backend to translate with, instead of creating one from
+     * {@link #setBackend(String)}.
+     */
+    public void setTranslationBackend(TranslationBackend translationBackend) {
+        this.translationBackend = translationBackend;
+    }
+
+    public File getMetricsFile() {
+        return metricsFile;
+    }
+
+    /**
+     * Set where to write the metrics for each run as JSON, or
+     * <code>null</code> to not write them.
+     */
+    public void setMetricsFile(File metricsFile) {
+        this.metricsFile = metricsFile;
+    }
+
+    public String getOutputEncoding() {
+        return outputEncoding;
+    }
+
+    /**
+     * Set the encoding of the bundles written, either <code>ISO-8859-1</code>
+     * (the default, with other characters escaped) or <code>UTF-8</code>
+     * (which Java 9 and later read resource bundles as).
+     */
+    public void setOutputEncoding(String outputEncoding) {
+        this.outputEncoding = outputEncoding;
+    }
+
+    public String getPlaceholders() {
+        return placeholders;
+    }
+
+    /**
+     * Set how text matching {@link #setNoTranslatePattern(List)} is marked
+     * when it is sent as html: <code>tag</code> for short numbered tags, or
+     * <code>span</code> for the much longer notranslate spans earlier
+     * versions sent. If not set, the Google and stub backends use tags and any
+     * other backend spans, as a backend we know nothing about is more likely
+     * to leave those alone.
+     */
+    public void setPlaceholders(String placeholders) {
+        this.placeholders = placeholders;
+    }
+
+    public List<String> getBundleFormats() {
+        return bundleFormats;
+    }
+
+    /**
+     * Set the class names of any {@link BundleFormat}s to use as well as
+     * those for <code>.properties</code>, JSON and <code>.po</code> files. A
+     * format with the same extension as another replaces it.
+     */
+    public void setBundleFormats(List<String> bundleFormats) {
+        this.bundleFormats = bundleFormats;
+    }
+
+    public String getRemoteCacheUrl() {
+        return remoteCacheUrl;
+    }
+
+    /**
+     * A remote cache to use as well as {@link #getCacheDir()}. Either an
+     * <code>http</code> or <code>https</code> URL of a server such as
+     * {@link RemoteCacheServer}, or a directory (for example on a shared file
+     * system).
+     */
+    public void setRemoteCacheUrl(String remoteCacheUrl) {
+        this.remoteCacheUrl = remoteCacheUrl;
+    }
+
+    public String getRemoteCacheToken() {
+        return remoteCacheToken;
+    }
+
+    /**
+     * The token a remote cache server needs, if any.
+     */
+    public void setRemoteCacheToken(String remoteCacheToken) {
+        this.remoteCacheToken = remoteCacheToken;
+    }
+
+    public RemoteCache getRemoteCache() {
+        return remoteCache;
+    }
+
+    /**
+     * A remote cache to use, instead of the one at {@link #getRemoteCacheUrl()}.
+     */
+    public void setRemoteCache(RemoteCache remoteCache) {
+        this.remoteCache = remoteCache;
+    }
+
+    public long getRemoteCacheTimeout() {
+        return remoteCacheTimeout;
+    }
+
+    /**
+     * Most milliseconds to spend looking up translations in the remote cache
+     * each run. Whatever has not been found by then is translated.
+     */
+    public void setRemoteCacheTimeout(long remoteCacheTimeout) {
+        this.remoteCacheTimeout = remoteCacheTimeout;
+    }
+
+    public boolean isRemoteCachePush() {
+        return remoteCachePush;
+    }
+
+    /**
+     * Whether to store new translations in the remote cache.
+     */
+    public void setRemoteCachePush(boolean remoteCachePush) {
+        this.remoteCachePush = remoteCachePush;
+    }
+
+    /**
+     * Whether only to work out what would be translated.
+     */
+    public boolean isPlan() {
+        return plan;
+    }
+
+    /**
+     * Only work out what would be translated, without translating anything or
+     * writing any bundles or caches. The backend is not connected to, so no
+     * API key is needed.
+     */
+    public void setPlan(boolean plan) {
+        this.plan = plan;
+    }
+
+    public File getPlanFile() {
+        return planFile;
+    }
+
+    /**
+     * Where to write the plan as JSON, when planning.
+     */
+    public void setPlanFile(File planFile) {
+        this.planFile = planFile;
+    }
+
+    public long getPlanLatency() {
+        return planLatency;
+    }
 
-        if (apikey == null) {
-            throw new IOException("Translation will not be performed because there is no API key available");
+    /**
+     * Milliseconds a request is expected to take, to project how long a plan
+     * would take to carry out.
+     */
+    public void setPlanLatency(long planLatency) {
+        this.planLatency = planLatency;
+    }
+
+    public double getCostPerMillionCharacters() {
+        return costPerMillionCharacters;
+    }
+
+    /**
+     * What the backend charges per million characters, to estimate the cost of
+     * a plan (0 to leave it out).
+     */
+    public void setCostPerMillionCharacters(double costPerMillionCharacters) {
+        this.costPerMillionCharacters = costPerMillionCharacters;
+    }
+
+    public TranslationMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * The plan made by the last run, if planning.
+     */
+    public TranslationPlan getPlan() {
+        return lastPlan;
+    }
+
+    /**
+     * The extensions of the bundles that can be translated, once open.
+     */
+    public Set<String> getBundleExtensions() {
+        return Collections.unmodifiableSet(formatsInUse.keySet());
+    }
+
+    /**
+     * Translate everything the file provider has, once.
+     */
+    public void execute() throws IOException {
+        open();
+        try {
+            translate();
+        } finally {
+            close();
         }
+    }
+
+    /**
+     * Get ready to translate, connecting to the backend. Until
+     * {@link #close()}, everything loaded to translate (the backend,
+     * translation memories and build manifests) is kept, so each
+     * {@link #translate()} only has to deal with what has changed since the
+     * last.
+     */
+    public void open() throws IOException {
 
         if (fileProvider == null) {
             throw new IOException("Translation will not be performed as fileProvider has not been set.");
@@ -195,55 +534,146 @@ public class Translater {
             throw new IOException("Translation will not be performed as targetDirectory has not been set.");
         }
 
+        if (!isUtf8Output() && !PropertiesWriter.ISO_8859_1.name().equalsIgnoreCase(outputEncoding)) {
+            throw new IOException("Translation will not be performed as outputEncoding must be ISO-8859-1 or UTF-8.");
+        }
+
+        if (placeholders != null && !placeholders.equals("tag") && !placeholders.equals("span")) {
+            throw new IOException("Translation will not be performed as placeholders must be tag or span.");
+        }
+
         LOG.info("Cache dir is " + cacheDir);
 
-        cacheDir.mkdirs();
+        if (!plan)
+            cacheDir.mkdirs();
 
-        replacer = new PatternReplacer();
-        if (!noTranslatePattern.isEmpty() && useHtmlForNonTranslatable) {
-            replacer.setUntranslatableStrings("<span class=\"notranslate\">NO_TRANSLATE</span>", "NO_TRANSLATE");
-        }
         for (String p : noTranslatePattern) {
             LOG.info("Will not translate content matching " + p);
-            replacer.addPattern(p);
         }
+        replacer = createReplacer();
+        formatsInUse = createBundleFormats();
+
+        TranslationBackend translator = createBackend();
+        replacer.setTags(isTags(translator));
+        if (!plan) {
+            translator.open();
+            backendOpened = true;
+        }
+        LOG.info((plan ? "Planning translation using " : "Translating using ") + translator.getName());
+        backendInUse = translator;
+        caches = new LinkedHashMap<File, CacheDir>();
+        limiter = new RateLimiter(requestsInFlight, requestsPerSecond, charactersPerSecond, retryDelay,
+                        MAX_RETRY_DELAY);
+
+        remoteInUse = createRemoteCache();
+        if (remoteInUse != null) {
+            try {
+                remoteInUse.open();
+                LOG.info("Using remote cache " + (remoteCacheUrl == null ? remoteInUse : remoteCacheUrl));
+                remoteExecutor = Executors.newFixedThreadPool(Math.max(1, requestsInFlight),
+                                daemonThreads("translate-remote-"));
+            } catch (IOException ioe) {
+                LOG.warn("Not using remote cache, it could not be opened. " + ioe.getMessage());
+                remoteInUse = null;
+            }
+        }
+    }
 
+    /**
+     * Translate what has changed since the last time, writing the metrics
+     * for this run.
+     */
+    public void translate() throws IOException {
+        if (backendInUse == null) {
+            throw new IllegalStateException("Not open.");
+        }
+        metrics = new TranslationMetrics();
+        metrics.setBackend(backendInUse.getName());
+        lastPlan = plan ? new TranslationPlan() : null;
         try {
-            // initialize the transport
-            httpTransport = GoogleNetHttpTransport.newTrustedTransport();
-
-            // set up global Translate instance
-            client = new Translate.Builder(httpTransport, JSON_FACTORY, null).setGoogleClientRequestInitializer(
-                new TranslateRequestInitializer(apikey)).setApplicationName("GoogleTranslateMavenPlugin/0.2").build();
-
-            try {
-                processDirectory(targetDirectory, cacheDir);
-            } catch (Exception e) {
-                throw new IOException("Translate failed: " + e.getMessage());
+            processDirectory(backendInUse, targetDirectory, cacheDir);
+        } catch (Exception e) {
+            throw new IOException("Translate failed: " + e.getMessage(), e);
+        } finally {
+            metrics.finished();
+            if (!plan) {
+                /* So what was stored in the remote cache is in the metrics */
+                if (remoteInUse != null)
+                    awaitPushes();
+                writeMetrics();
             }
+        }
+        if (plan) {
+            lastPlan.setCostPerMillionCharacters(costPerMillionCharacters);
+            lastPlan.project(requestsInFlight, requestsPerSecond, charactersPerSecond, planLatency);
+            if (planFile != null)
+                lastPlan.write(planFile);
+        }
+    }
 
+    /**
+     * Close the backend and anything else kept open between runs.
+     */
+    public void close() throws IOException {
+        if (backendInUse == null)
             return;
-        } catch (Throwable t) {
-            throw new IOException("Failed to translate.", t);
+        try {
+            if (backendOpened)
+                backendInUse.close();
+        } finally {
+            backendInUse = null;
+            backendOpened = false;
+            if (remoteInUse != null) {
+                closeRemoteCache();
+            }
+            for (CacheDir cache : caches.values()) {
+                if (cache.memory != null) {
+                    try {
+                        cache.memory.close();
+                    } catch (IOException ioe) {
+                        LOG.warn("Failed to close translation memory in " + cache.dir, ioe);
+                    }
+                }
+            }
+            caches = null;
         }
-
     }
 
-    private void processDirectory(File destinationDir, File sourceCacheDir) throws IOException, URISyntaxException {
+    private void processDirectory(final TranslationBackend translator, File destinationDir, File sourceCacheDir)
+                    throws IOException, URISyntaxException {
 
         LOG.info("Using target directory " + destinationDir.getAbsolutePath());
 
-        destinationDir.mkdirs();
+        if (!plan)
+            destinationDir.mkdirs();
+
+        List<BundleJob> jobs = new ArrayList<BundleJob>();
+        Iterable<Translatable> translatables = fileProvider.getTranslatables();
+        long started = System.nanoTime();
+        BundleIndex index = BundleIndex.build(translatables, formatsInUse.keySet());
+        LOG.info("Indexed " + index.size() + " bundle files in "
+                        + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) + "ms");
+        for (Translatable p : translatables) {
+            BundleIndex.Entry source = index.get(p.getFile());
+            if (source != null) {
+                File targetRoot = p.getTargetDirectory() == null ? destinationDir : p.getTargetDirectory();
+                File cacheRoot = (p.getCacheDir() == null ? sourceCacheDir : p.getCacheDir()).getAbsoluteFile();
+                CacheDir cache = caches.get(cacheRoot);
+                if (cache == null) {
+                    cache = new CacheDir(cacheRoot);
+                    cache.manifest.load();
+                    caches.put(cacheRoot, cache);
+                }
 
-        for (Translatable p : fileProvider.getTranslatables()) {
-            if (p.getFile().isFile()) {
                 String fileName = p.getRelativePath();
                 int lidx = fileName.lastIndexOf('/');
                 String dir = lidx == -1 ? "" : fileName.substring(0, lidx);
                 String pname = p.getFile().getName();
                 int idx = pname.lastIndexOf('.');
-                if (idx == -1) {
-                    LOG.error("Resource bundles must end with .properties");
+                BundleFormat bundleFormat = idx == -1 ? null : formatsInUse.get(pname.substring(idx));
+                if (bundleFormat == null) {
+                    LOG.error("Resource bundles must end with one of " + formatsInUse.keySet() + ", not "
+                                    + p.getFile().getName());
                     continue;
                 }
                 pname = pname.substring(0, idx);
@@ -267,12 +697,9 @@ public class Translater {
                         // Ambiguous, could be either
                         // language + "_" + script + "_" + country
                         // language + "_" + country + "_" + variant
-                        for (Locale l : Locale.getAvailableLocales()) {
-                            if (l.getCountry().equals(parts[2])) {
-                                country = parts[2];
-                                variant = parts[3];
-                                break;
-                            }
+                        if (BundleIndex.isCountry(parts[2])) {
+                            country = parts[2];
+                            variant = parts[3];
                         }
                         if (country == null) {
                             script = parts[2];
@@ -283,12 +710,8 @@ public class Translater {
                         // Ambiguous, could be either
                         // language + "_" + script
                         // language + "_" + country
-
-                        for (Locale l : Locale.getAvailableLocales()) {
-                            if (l.getCountry().equals(parts[2])) {
-                                country = parts[2];
-                                break;
-                            }
+                        if (BundleIndex.isCountry(parts[2])) {
+                            country = parts[2];
                         }
                         if (country == null) {
                             script = parts[2];
@@ -300,20 +723,486 @@ public class Translater {
                     sourceScript, script) || !Objects.equals(sourceVariant, variant)) {
                     LOG.info("Skipping " + p.getFile().getName() + " because it is not the same as the source locale");
                 } else {
-                    File dest = dir.equals("") ? destinationDir : new File(destinationDir, dir);
-                    File destCache = dir.equals("") ? sourceCacheDir : new File(sourceCacheDir, dir);
+                    File dest = dir.equals("") ? targetRoot : new File(targetRoot, dir);
+                    File destCache = dir.equals("") ? cacheRoot : new File(cacheRoot, dir);
 
                     LOG.info("    " + fileName + " -> " + dest.getAbsolutePath() + " [" + destCache.getAbsolutePath() + "]");
 
-                    translateFile(p.getFile(), base, dest, destCache);
+                    translateFile(source, bundleFormat, index.family(p.getFile().getParentFile(), base,
+                                    bundleFormat.getExtension()), fileName, base, dest, destCache, cache, jobs);
+                }
+            }
+        }
+
+        /*
+         * Leave out any pair whose source, override, output and configuration
+         * are the same as they were when it was last produced
+         */
+        String config = configDigest(translator);
+        int upToDate = 0;
+        for (Iterator<BundleJob> it = jobs.iterator(); it.hasNext();) {
+            BundleJob job = it.next();
+            if (job.cache.manifest.isUpToDate(job.source.stat(), stat(job.override), job.targetFile, config)) {
+                LOG.debug(job.targetFile.getName() + " is up to date");
+                it.remove();
+                upToDate++;
+            }
+        }
+        if (upToDate > 0) {
+            LOG.info(upToDate + " bundle/language pairs are up to date");
+            metrics.upToDate(upToDate);
+            if (lastPlan != null)
+                lastPlan.upToDate(upToDate);
+        }
+
+        if (jobs.isEmpty())
+            return;
+
+        int poolSize = Math.max(1, threads);
+        LOG.info("Translating " + jobs.size() + " bundle/language pairs using " + poolSize + " thread(s)");
+
+        for (BundleJob job : jobs) {
+            if (job.cache.memory == null) {
+                job.cache.memory = new TranslationMemory(new File(job.cache.dir, TranslationMemory.FILENAME));
+                job.cache.memory.setReadOnly(plan);
+                job.cache.memory.open();
+            }
+        }
+        final Collection<CacheDir> open = new ArrayList<CacheDir>();
+        for (CacheDir cache : caches.values()) {
+            if (cache.memory != null)
+                open.add(cache);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(poolSize, daemonThreads("translate-"));
+        try {
+            /*
+             * Read and pre-process each source bundle once, the result is
+             * shared by every language
+             */
+            List<Task> tasks = new ArrayList<Task>();
+            final Map<File, PreparedBundle> prepared = new HashMap<File, PreparedBundle>();
+            for (BundleJob job : jobs) {
+                if (!prepared.containsKey(job.sourceFile)) {
+                    final File sourceFile = job.sourceFile;
+                    final BundleFormat bundleFormat = job.bundleFormat;
+                    prepared.put(sourceFile, null);
+                    tasks.add(new Task(new TaskLog()) {
+                        @Override
+                        void run() throws Exception {
+                            PreparedBundle bundle = prepare(sourceFile, bundleFormat, log);
+                            synchronized (prepared) {
+                                prepared.put(sourceFile, bundle);
+                            }
+                        }
+                    });
+                }
+            }
+            runTasks(executor, tasks);
+            for (BundleJob job : jobs) {
+                job.prepared = prepared.get(job.sourceFile);
+            }
+
+            /* Work out what every bundle needs translating */
+            tasks.clear();
+            for (final BundleJob job : jobs) {
+                tasks.add(new Task(job.log) {
+                    @Override
+                    void run() throws Exception {
+                        collect(translator, job, open);
+                    }
+                });
+            }
+            runTasks(executor, tasks);
+
+            /*
+             * Gather the ops for each language from all bundles so requests
+             * are as full as they can be, rather than sending a few small
+             * requests for every bundle. Text that appears more than once, in
+             * any bundle, is only sent once per language and the result shared.
+             */
+            Map<String, List<TranslationOp>> opsByLanguage = new LinkedHashMap<String, List<TranslationOp>>();
+            Map<String, TranslationOp> unique = new HashMap<String, TranslationOp>();
+            int total = 0;
+            for (BundleJob job : jobs) {
+                List<TranslationOp> ops = opsByLanguage.get(job.language);
+                if (ops == null) {
+                    ops = new ArrayList<TranslationOp>();
+                    opsByLanguage.put(job.language, ops);
+                }
+                for (TranslationOp op : job.ops) {
+                    total++;
+                    TranslationOp first = unique.get(op.cacheKey);
+                    if (first == null) {
+                        unique.put(op.cacheKey, op);
+                        ops.add(op);
+                    } else {
+                        first.duplicates.add(op);
+                    }
+                }
+            }
+            if (total > unique.size()) {
+                LOG.info(total - unique.size() + " of " + total + " properties are duplicates and will not be sent");
+                metrics.duplicates(total - unique.size());
+            }
+
+            /* Anything the local caches did not have may be in the remote one */
+            if (remoteInUse != null && !unique.isEmpty()) {
+                Map<String, String> found = remoteLookup(unique.keySet());
+                for (List<TranslationOp> ops : opsByLanguage.values()) {
+                    for (Iterator<TranslationOp> it = ops.iterator(); it.hasNext();) {
+                        TranslationOp op = it.next();
+                        String text = found.get(op.cacheKey);
+                        if (text != null) {
+                            op.translated = text;
+                            for (TranslationOp dup : op.duplicates) {
+                                dup.translated = text;
+                            }
+                            it.remove();
+                        }
+                    }
+                }
+                if (!found.isEmpty()) {
+                    LOG.info(found.size() + " of " + unique.size() + " properties were in the remote cache");
+                }
+            }
+            if (plan) {
+                plan(translator, jobs, opsByLanguage);
+                return;
+            }
+            final Map<String, String> fresh = new ConcurrentHashMap<String, String>();
+
+            /*
+             * Send the requests on their own threads, at most requestsInFlight
+             * at a time (fewer if the backend says we are sending too much).
+             * Each bundle is written as soon as the last request with any of
+             * its text in has returned, so writing overlaps with requests
+             * still being made.
+             */
+            int maxSources = limit(maxSourcesPerCall, translator.getMaxSources());
+            int maxCharacters = limit(maxCharactersPerCall, translator.getMaxCharacters());
+            BatchPacker packer = new BatchPacker(maxSources, maxCharacters);
+            List<Task> batchTasks = new ArrayList<Task>();
+            final ExecutorService writer = executor;
+            for (Map.Entry<String, List<TranslationOp>> en : opsByLanguage.entrySet()) {
+                if (en.getValue().isEmpty())
+                    continue;
+                List<List<TranslationOp>> batches = packer.pack(en.getValue());
+                LOG.info("Translating " + en.getValue().size() + " properties into " + en.getKey() + " using "
+                                + batches.size() + " request(s)");
+                for (final List<TranslationOp> batch : batches) {
+                    final String language = en.getKey();
+                    metrics.batch(Math.max((double) batch.size() / Math.max(1, maxSources), (double) characters(batch)
+                                    / Math.max(1, maxCharacters)));
+                    final Set<BundleJob> touched = new LinkedHashSet<BundleJob>();
+                    for (TranslationOp op : batch) {
+                        touched.add(op.job);
+                        for (TranslationOp dup : op.duplicates) {
+                            touched.add(dup.job);
+                        }
+                    }
+                    for (BundleJob job : touched) {
+                        job.pending.incrementAndGet();
+                    }
+                    batchTasks.add(new Task(new TaskLog()) {
+                        @Override
+                        void run() throws Exception {
+                            translateWithRetry(translator, batch, language, log);
+                            for (TranslationOp op : batch) {
+                                fresh.put(op.cacheKey, op.translated);
+                                for (TranslationOp dup : op.duplicates) {
+                                    dup.translated = op.translated;
+                                }
+                            }
+                            for (BundleJob job : touched) {
+                                if (job.pending.decrementAndGet() == 0) {
+                                    submitWrite(writer, job);
+                                }
+                            }
+                        }
+                    });
+                }
+            }
+            for (BundleJob job : jobs) {
+                if (job.pending.get() == 0) {
+                    submitWrite(executor, job);
+                }
+            }
+            ExecutorService requests = Executors.newFixedThreadPool(Math.max(1, requestsInFlight),
+                            daemonThreads("translate-request-"));
+            try {
+                runTasks(requests, batchTasks);
+            } finally {
+                requests.shutdownNow();
+            }
+
+            /* Wait for the bundles to be written (all have been started by now) */
+            tasks.clear();
+            List<Future<Void>> writes = new ArrayList<Future<Void>>();
+            for (BundleJob job : jobs) {
+                tasks.add(job.writeTask);
+                writes.add(job.written);
+            }
+            await(tasks, writes);
+            for (CacheDir cache : open) {
+                cache.memory.flush();
+            }
+
+            for (BundleJob job : jobs) {
+                job.cache.manifest.update(job.source.stat(), stat(job.override), job.targetFile, config);
+            }
+            for (CacheDir cache : open) {
+                cache.manifest.save();
+            }
+
+            if (remoteInUse != null && remoteCachePush && !fresh.isEmpty()) {
+                remotePush(fresh);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Record what would be sent, packed as it would be, in the plan.
+     */
+    private void plan(TranslationBackend translator, List<BundleJob> jobs,
+                      Map<String, List<TranslationOp>> opsByLanguage) {
+        for (BundleJob job : jobs) {
+            for (TranslationOp op : job.ops) {
+                if (op.translated == null)
+                    lastPlan.key(job.counts.bundle, job.language);
+            }
+        }
+        BatchPacker packer = new BatchPacker(limit(maxSourcesPerCall, translator.getMaxSources()), limit(
+                        maxCharactersPerCall, translator.getMaxCharacters()));
+        for (Map.Entry<String, List<TranslationOp>> en : opsByLanguage.entrySet()) {
+            if (en.getValue().isEmpty())
+                continue;
+            String language = en.getKey();
+            for (TranslationOp op : en.getValue()) {
+                lastPlan.characters(op.job.counts.bundle, language, op.value.length(), op.saved);
+            }
+            for (List<TranslationOp> batch : packer.pack(en.getValue())) {
+                Set<TranslationPlan.Item> touched = new LinkedHashSet<TranslationPlan.Item>();
+                for (TranslationOp op : batch) {
+                    touched.add(lastPlan.item(op.job.counts.bundle, language));
+                    for (TranslationOp dup : op.duplicates) {
+                        touched.add(lastPlan.item(dup.job.counts.bundle, language));
+                    }
                 }
+                lastPlan.request(language, touched);
             }
         }
+    }
 
+    /**
+     * Look up keys in the remote cache, in batches sent at the same time, for
+     * at most {@link #remoteCacheTimeout}. Failures are logged, but otherwise
+     * the same as the keys not being found.
+     */
+    private Map<String, String> remoteLookup(Collection<String> keys) {
+        long started = System.nanoTime();
+        long deadline = started + TimeUnit.MILLISECONDS.toNanos(remoteCacheTimeout);
+        final Map<String, String> found = new ConcurrentHashMap<String, String>();
+        List<String> all = new ArrayList<String>(keys);
+        int max = Math.max(1, remoteInUse.getMaxKeys());
+        final RemoteCache remote = remoteInUse;
+        List<Future<?>> lookups = new ArrayList<Future<?>>();
+        for (int i = 0; i < all.size(); i += max) {
+            final List<String> batch = all.subList(i, Math.min(all.size(), i + max));
+            lookups.add(remoteExecutor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    found.putAll(remote.get(batch));
+                    return null;
+                }
+            }));
+        }
+        int timedOut = 0;
+        Throwable failure = null;
+        for (Future<?> lookup : lookups) {
+            try {
+                lookup.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException te) {
+                lookup.cancel(true);
+                timedOut++;
+            } catch (ExecutionException ee) {
+                failure = ee.getCause();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (timedOut > 0) {
+            LOG.warn(timedOut + " of " + lookups.size() + " remote cache lookups took longer than "
+                            + remoteCacheTimeout + "ms, translating what they would have found");
+        }
+        if (failure != null) {
+            LOG.warn("Remote cache lookup failed. " + failure.getMessage());
+        }
+        Map<String, String> result = new HashMap<String, String>(found);
+        metrics.remoteLookup(all.size(), result.size(), System.nanoTime() - started);
+        return result;
     }
 
-    private void translateFile(File sourceFile, String baseName, File desintationDir, File sourceCacheDir) throws IOException,
-                    URISyntaxException {
+    /**
+     * Store new translations in the remote cache, in batches sent at the same
+     * time. They are waited for by {@link #awaitPushes()}.
+     */
+    private void remotePush(Map<String, String> translations) {
+        final List<Map.Entry<String, String>> all = new ArrayList<Map.Entry<String, String>>(translations
+                        .entrySet());
+        int max = Math.max(1, remoteInUse.getMaxKeys());
+        final RemoteCache remote = remoteInUse;
+        final TranslationMetrics runMetrics = metrics;
+        synchronized (pushes) {
+            for (int i = 0; i < all.size(); i += max) {
+                final Map<String, String> batch = new LinkedHashMap<String, String>();
+                for (Map.Entry<String, String> en : all.subList(i, Math.min(all.size(), i + max))) {
+                    batch.put(en.getKey(), en.getValue());
+                }
+                pushes.add(remoteExecutor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        try {
+                            remote.put(batch);
+                            runMetrics.remoteStored(batch.size());
+                        } catch (IOException ioe) {
+                            LOG.warn("Failed to store " + batch.size() + " translations in the remote cache. "
+                                            + ioe.getMessage());
+                        }
+                        return null;
+                    }
+                }));
+            }
+        }
+    }
+
+    /**
+     * Give any translations still being stored in the remote cache up to
+     * {@link #remoteCacheTimeout} to finish, then close it.
+     */
+    private void closeRemoteCache() {
+        awaitPushes();
+        remoteExecutor.shutdownNow();
+        remoteExecutor = null;
+        try {
+            remoteInUse.close();
+        } catch (IOException ioe) {
+            LOG.warn("Failed to close remote cache. " + ioe.getMessage());
+        }
+        remoteInUse = null;
+    }
+
+    /**
+     * Give any translations still being stored in the remote cache up to
+     * {@link #remoteCacheTimeout} to finish.
+     */
+    private void awaitPushes() {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(remoteCacheTimeout);
+        synchronized (pushes) {
+            for (Future<?> push : pushes) {
+                try {
+                    push.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                } catch (TimeoutException te) {
+                    LOG.warn("Gave up storing translations in the remote cache after " + remoteCacheTimeout + "ms");
+                    break;
+                } catch (ExecutionException ee) {
+                    // Logged by the push
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            pushes.clear();
+        }
+    }
+
+    private RemoteCache createRemoteCache() throws IOException {
+        if (remoteCache != null)
+            return remoteCache;
+        if (remoteCacheUrl == null || remoteCacheUrl.length() == 0)
+            return null;
+        if (remoteCacheUrl.startsWith("http:") || remoteCacheUrl.startsWith("https:")) {
+            HttpRemoteCache http = new HttpRemoteCache(remoteCacheUrl);
+            http.setTimeout((int) Math.min(Integer.MAX_VALUE, remoteCacheTimeout));
+            if (remoteCacheToken != null && remoteCacheToken.length() > 0)
+                http.setToken(remoteCacheToken);
+            return http;
+        }
+        if (remoteCacheUrl.startsWith("file:")) {
+            try {
+                return new FileRemoteCache(new File(new URI(remoteCacheUrl)));
+            } catch (Exception e) {
+                throw new IOException("Invalid remote cache " + remoteCacheUrl, e);
+            }
+        }
+        return new FileRemoteCache(new File(remoteCacheUrl));
+    }
+
+    private static ThreadFactory daemonThreads(final String prefix) {
+        return new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, prefix + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+
+    /**
+     * Run the tasks, as many at a time as the executor has threads. Results
+     * are collected in the order the tasks were created, so the log output and
+     * the failure reported are the same as they would be if the tasks were run
+     * one after the other.
+     */
+    private void runTasks(ExecutorService executor, List<Task> tasks) throws IOException, URISyntaxException {
+        List<Future<Void>> futures = new ArrayList<Future<Void>>(tasks.size());
+        for (Task task : tasks) {
+            futures.add(executor.submit(task));
+        }
+        await(tasks, futures);
+    }
+
+    private void await(List<Task> tasks, List<Future<Void>> futures) throws IOException, URISyntaxException {
+        for (int i = 0; i < tasks.size(); i++) {
+            try {
+                futures.get(i).get();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while translating.", ie);
+            } catch (ExecutionException ee) {
+                tasks.get(i).log.flush(LOG);
+                Throwable cause = ee.getCause();
+                if (cause instanceof IOException)
+                    throw (IOException) cause;
+                if (cause instanceof URISyntaxException)
+                    throw (URISyntaxException) cause;
+                if (cause instanceof RuntimeException)
+                    throw (RuntimeException) cause;
+                throw new IOException("Failed to translate.", cause);
+            }
+            tasks.get(i).log.flush(LOG);
+        }
+    }
+
+    private void submitWrite(ExecutorService executor, final BundleJob job) {
+        job.writeTask = new Task(job.log) {
+            @Override
+            void run() throws Exception {
+                write(job);
+            }
+        };
+        job.written = executor.submit(job.writeTask);
+    }
+
+    private void translateFile(BundleIndex.Entry source, BundleFormat bundleFormat, BundleIndex.Family family,
+                               String fileName, String baseName, File desintationDir, File sourceCacheDir,
+                               CacheDir cache, List<BundleJob> jobs) {
 
         StringTokenizer t = new StringTokenizer(languages, ",");
         while (t.hasMoreTokens()) {
@@ -321,199 +1210,346 @@ public class Translater {
             String l = t.nextToken();
 
             if (baseName.endsWith("_" + l)) {
-                LOG.info("Skipping " + baseName + ".properties as its an override file.");
+                LOG.info("Skipping " + baseName + bundleFormat.getExtension() + " as its an override file.");
                 continue;
             }
 
-            translateFileToLanguage(sourceFile, baseName, desintationDir, sourceCacheDir, l);
+            BundleJob job = new BundleJob(source.file, bundleFormat, baseName, desintationDir, sourceCacheDir, l);
+            job.source = source;
+            job.override = family == null ? null : family.get(l);
+            job.cache = cache;
+            job.counts = metrics.bundle(fileName, l);
+            jobs.add(job);
 
         }
 
     }
 
-    private void translateFileToLanguage(File sourceFile, String baseName, File destinationDir, File sourceCacheDir,
-                                         String language) throws IOException, URISyntaxException {
-
-        sourceCacheDir.mkdirs();
-
-        LOG.info("Translating " + sourceFile.getName() + " to " + language);
-
-        File overrideFile = new File(sourceFile.getParentFile(), baseName + "_" + language + ".properties");
-        File previousTranslation = new File(sourceCacheDir, baseName + "_" + language + ".properties");
-
-        Properties p;
-        Properties translated = new Properties();
-        Properties override;
-        Properties cached;
+    private PreparedBundle prepare(File sourceFile, BundleFormat bundleFormat, TaskLog log) throws IOException {
+
+        log.debug("Loading source file " + sourceFile.getAbsolutePath());
+        final List<PreparedBundle.Entry> entries = new ArrayList<PreparedBundle.Entry>();
+        /* Entries are pre-processed as they are read, so time the two apart */
+        final long[] preprocessing = new long[1];
+        /* Properties values have always been written trimmed */
+        final boolean keepWhitespace = !(bundleFormat instanceof PropertiesFormat);
+        long started = System.nanoTime();
+        bundleFormat.read(sourceFile, new BundleFormat.Handler() {
+            @Override
+            public void entry(String key, String value) {
+                long now = System.nanoTime();
+                entries.add(prepare(key, value, keepWhitespace));
+                preprocessing[0] += System.nanoTime() - now;
+            }
+        });
+        metrics.parsed(System.nanoTime() - started - preprocessing[0]);
+        metrics.preprocessed(preprocessing[0]);
+        return new PreparedBundle(sourceFile, entries);
+    }
 
-        p = loadProperties(sourceFile, "source");
-        override = loadProperties(overrideFile, "override");
-        cached = loadProperties(previousTranslation, "cache");
+    private PreparedBundle.Entry prepare(String name, String value, boolean keepWhitespace) {
+
+        // The unprocessed content from the base resource file
+        String originalContent = value.trim();
+
+        /*
+         * Only the text is translated, but some formats need the whitespace
+         * around it kept, e.g. a PO msgstr must end with a newline if its
+         * msgid does
+         */
+        String leading = "";
+        String trailing = "";
+        if (keepWhitespace && originalContent.length() > 0) {
+            int start = value.indexOf(originalContent);
+            leading = value.substring(0, start);
+            trailing = value.substring(start + originalContent.length());
+        }
 
-        boolean needCacheWrite = false;
+        /*
+         * We process the source property for any patterns we don't want to
+         * translate. These are sent to Google and the returned content is
+         * processed again, putting the untranslatable text back where it
+         * was.
+         */
+        PatternReplacer.Processed result = replacer.preProcess(originalContent);
+        String processed = result.getText();
+
+        /* Determine format, html is only needed to keep something from being translated **/
+        String format = this.format;
+        String originalFormat = processed.indexOf("<html>") != -1 ? "html" : "text";
+        if (useHtmlForNonTranslatable && !result.getValues().isEmpty())
+            format = "html";
+        else if (format == null)
+            format = originalFormat;
+
+        return new PreparedBundle.Entry(name, originalContent, leading, trailing, processed, result.getCanonicalText(),
+                        result.getValues(), format, originalFormat, result.getSavedCharacters());
+    }
 
-        List<TranslationOp> ops = new ArrayList<TranslationOp>();
+    private void collect(TranslationBackend translator, BundleJob job, Collection<CacheDir> caches)
+                    throws IOException {
+
+        TaskLog log = job.log;
+        TranslationMemory memory = job.cache.memory;
+
+        Map<String, String> translated = job.translated;
+        Map<String, String> override = job.override == null ? new HashMap<String, String>() : read(
+                        job.overrideFile, job.bundleFormat, "override", log);
+
+        /*
+         * Caches from before the translation memory existed are imported
+         * whole the first time they are seen (or when they change), including
+         * translations of keys that are overridden or excluded now, as they
+         * are not looked at again. They only ever held Google translations.
+         */
+        String engine = translator.getName();
+        File legacyCacheFile = new File(job.sourceCacheDir, job.baseName + "_" + job.language + ".properties");
+        String legacyKey = "legacy|" + legacyCacheFile.getAbsolutePath();
+        String legacyStamp = legacyCacheFile.lastModified() + ":" + legacyCacheFile.length();
+        if (engine.equals(GoogleTranslationBackend.NAME) && legacyCacheFile.exists()
+                        && !legacyStamp.equals(memory.get(legacyKey))) {
+            importLegacy(job, engine, loadProperties(legacyCacheFile, "cache", log));
+            memory.put(legacyKey, legacyStamp);
+        }
 
-        for (String name : p.stringPropertyNames()) {
+        List<TranslationOp> ops = job.ops;
 
-            // The unprocessed content from the base resource file
-            String originalContent = p.getProperty(name).trim();
+        for (PreparedBundle.Entry entry : job.prepared.getEntries()) {
 
-            /*
-             * We process the source property for any patterns we don't want to
-             * translate. These are sent to Google and the returned content is
-             * processed again, putting the untranslatable text back where it
-             * was.
-             */
-            String processed = replacer.preProcess(originalContent);
+            String name = entry.key;
 
-            if (originalContent.equals("")) {
+            if (entry.original.equals("")) {
                 translated.put(name, "");
-                cached.put(name, hash("") + "|" + "");
-                needCacheWrite = true;
                 continue;
             }
 
             if (override.containsKey(name)) {
-                translated.put(name, override.getProperty(name));
-                LOG.info("Detected overridden text for " + name);
+                translated.put(name, override.get(name));
+                log.debug("Detected overridden text for " + name);
+                job.counts.overridden.incrementAndGet();
                 continue;
-            } else if (cached.containsKey(name)) {
+            }
 
-                String c = cached.getProperty(name);
-                int idx = c.indexOf('|');
-                String h = c.substring(0, idx);
-                String text = c.substring(idx + 1);
+            String cacheKey = TranslationMemory.key(engine, sourceLanguage, job.language, entry.format, entry.hash);
+            String text = memory.get(cacheKey);
 
-                if (hash(processed).equals(h)) {
-                    translated.put(name, replacer.postProcess(text));
-                    continue;
+            if (text == null) {
+                /* Made before hashes were versioned, copy it to the current key */
+                text = memory.get(TranslationMemory.key(engine, sourceLanguage, job.language, entry.format, entry
+                                .getMd5()));
+                if (text != null) {
+                    memory.put(cacheKey, text);
                 }
-                LOG.info("Detected change to cached text for " + name);
-            }
-
-            LOG.debug("Marking " + name + " for translation");
-
-            /* Determine format **/
-            String format = this.format;
-            String originalFormat = processed.indexOf("<html>") != -1 ? "html" : "text";
-            if (useHtmlForNonTranslatable && !noTranslatePattern.isEmpty())
-                format = "html";
-            else if (format == null)
-                format = originalFormat;
-
-            ops.add(new TranslationOp(name, processed, new ArrayList<String>(replacer.getContentMap()), format, originalFormat));
-
-            // if (characters > 4000) {
-            //
-            // LOG.info("Translating " + characters + " characters");
-            // List<TranslationsResource> translations =
-            // translate(toTranslateValues, sourceLanguage, language);
-            //
-            // for (TranslationsResource t : translations) {
-            //
-            // name = toTranslateKeys.remove(0);
-            // processed = toTranslateValues.remove(0);
-            // replacer.getContentMap().clear();
-            // replacer.getContentMap().addAll(toTranslateMap.remove(0));
-            //
-            // // And now the bit where the original untranslatable
-            // // text is
-            // // put
-            // // back
-            // String postProcessed =
-            // replacer.postProcess(t.getTranslatedText());
-            //
-            // translated.put(name, postProcessed);
-            // cached.put(name, hash(processed) + "|" + t.getTranslatedText());
-            // needCacheWrite = true;
-            // }
-            //
-            // characters = 0;
-            // }
-        }
-
-        if (!ops.isEmpty()) {
-
-            LOG.info("Translating " + ops.size() + " properties");
-
-            String format = null;
-            while (!ops.isEmpty()) {
-                List<TranslationOp> todo = new ArrayList<TranslationOp>();
-
-                for (TranslationOp op : new ArrayList<TranslationOp>(ops)) {
-                    ops.remove(op);
-
-                    if (op.value.length() == 0)
-                        continue;
-
-                    if (!hasAnyAlpha(op.value))
-                        continue;
-
-                    if (!isIncludeKey(op.keyName))
-                        continue;
-
-                    if (format == null)
-                        format = op.format;
-                    else if (!format.equals(op.format))
-                        break;
+            }
 
-                    todo.add(op);
+            if (text == null && useHtmlForNonTranslatable && !noTranslatePattern.isEmpty()
+                            && !entry.format.equals("html")) {
+                /* Earlier versions sent everything as html when anything might need it */
+                text = memory.get(TranslationMemory.key(engine, sourceLanguage, job.language, "html", entry.hash));
+                if (text != null) {
+                    memory.put(cacheKey, text);
+                }
+            }
 
-                    if (todo.size() >= maxSourcesPerCall)
+            if (text == null && caches.size() > 1) {
+                /* Translated for another project in the same run */
+                for (CacheDir other : caches) {
+                    if (other != job.cache && (text = other.memory.get(cacheKey)) != null) {
+                        memory.put(cacheKey, text);
                         break;
+                    }
                 }
+            }
 
-                if (!todo.isEmpty()) {
-                    translateOps(todo, sourceLanguage, language);
+            if (text != null) {
+                translated.put(name, entry.surround(replacer.postProcess(text, entry.placeholders)));
+                job.counts.cacheHits.incrementAndGet();
+                continue;
+            }
 
-                    /* Post process */
-                    for (TranslationOp op : todo) {
-                        replacer.getContentMap().clear();
-                        replacer.getContentMap().addAll(op.map);
-                        String postProcessed = op.value;
-                        try {
-                            postProcessed = replacer.postProcess(op.translated);
-                        } catch (RuntimeException rte) {
-                            LOG.warn("Failed to translate '" + op.value + "'. " + rte.getMessage() + ". Will use processed text.");
-                        }
-                        translated.put(op.keyName, postProcessed);
-                        cached.put(op.keyName, hash(op.value) + "|" + op.translated);
-                        needCacheWrite = true;
-                    }
-                }
+            if (!hasAnyAlpha(entry.processed)) {
+                log.debug("Not translating " + name + " as it has no text");
+                continue;
+            }
 
-                format = null;
+            if (!isIncludeKey(name)) {
+                log.debug("Not translating " + name + " as it is excluded");
+                continue;
             }
 
+            log.debug("Marking " + name + " for translation");
+
+            TranslationOp op = new TranslationOp(name, entry.processed, entry.placeholders, entry.format,
+                            entry.originalFormat);
+            op.cacheKey = cacheKey;
+            op.entry = entry;
+            op.saved = entry.savedCharacters;
+            op.job = job;
+            ops.add(op);
+            job.counts.cacheMisses.incrementAndGet();
         }
 
-        File target = new File(destinationDir, baseName + "_" + language + ".properties");
+        log.info("Translating " + job.sourceFile.getName() + " to " + job.language + ": " + job.counts.overridden
+                        + " overridden, " + job.counts.cacheHits + " cached, " + ops.size() + " to translate");
+    }
 
-        if (target.exists()) {
-            LOG.info("Deleting existing target " + target.getName() + " as we have a new translation.");
-            target.delete();
+    /**
+     * Copy the translations in a cache from before the translation memory
+     * existed, which are keyed by property name with the MD5 of the text they
+     * are a translation of, into the memory. Those of text that has changed
+     * since are left behind.
+     */
+    private void importLegacy(BundleJob job, String engine, Properties legacy) throws IOException {
+        TranslationMemory memory = job.cache.memory;
+        for (PreparedBundle.Entry entry : job.prepared.getEntries()) {
+            String c = legacy.getProperty(entry.key);
+            if (c == null || entry.original.equals(""))
+                continue;
+            int idx = c.indexOf('|');
+            if (idx != -1 && entry.getMd5().equals(c.substring(0, idx))) {
+                String cacheKey = TranslationMemory.key(engine, sourceLanguage, job.language, entry.format,
+                                entry.hash);
+                if (memory.get(cacheKey) == null)
+                    memory.put(cacheKey, c.substring(idx + 1));
+            } else {
+                job.log.debug("Detected change to cached text for " + entry.key);
+            }
         }
+    }
+
+    private void write(BundleJob job) throws IOException {
+
+        TaskLog log = job.log;
+        long started = System.nanoTime();
 
-        FileOutputStream out = new FileOutputStream(target);
+        /* Post process */
+        for (TranslationOp op : job.ops) {
+            if (op.translated == null)
+                continue;
+
+            String postProcessed = op.value;
+            try {
+                postProcessed = replacer.postProcess(op.translated, op.map);
+            } catch (RuntimeException rte) {
+                log.warn("Failed to translate '" + op.value + "'. " + rte.getMessage() + ". Will use processed text.");
+            }
+            job.translated.put(op.keyName, op.entry.surround(postProcessed));
+            job.cache.memory.put(op.cacheKey, op.translated);
+        }
+
+        File target = job.targetFile;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+        job.bundleFormat.write(job.sourceFile, job.language, job.translated,
+                        "Auto generated by Google Translate V2 API maven plugin", isUtf8Output(), out);
+        byte[] content = out.toByteArray();
+        if (PropertiesWriter.write(target, content)) {
+            log.debug("Wrote " + target.getName());
+            metrics.written(content.length, System.nanoTime() - started);
+        } else {
+            log.debug(target.getName() + " is unchanged");
+            metrics.unchanged(System.nanoTime() - started);
+        }
+
+    }
+
+    /**
+     * A digest of the configuration that affects what is produced for a
+     * bundle, so that changing it causes bundles to be translated again. This
+     * is still MD5, so manifests written by earlier versions stay valid.
+     */
+    private String configDigest(TranslationBackend translator) {
+        StringBuilder b = new StringBuilder();
+        b.append(translator.getName()).append('|');
+        b.append(sourceLanguage).append('|');
+        b.append(format).append('|');
+        b.append(useHtmlForNonTranslatable).append('|');
+        b.append(noTranslatePattern).append('|');
+        b.append(excludeKeys);
+        /* Bundles used to be written sorted, rather than in the source's order */
+        b.append("|ordered");
+        if (isUtf8Output())
+            b.append("|utf8");
+        return ContentHash.md5(b.toString());
+    }
+
+    private static String stat(BundleIndex.Entry entry) {
+        return entry == null ? BuildManifest.MISSING : entry.stat();
+    }
+
+    private boolean isUtf8Output() {
+        return PropertiesWriter.UTF8.name().equalsIgnoreCase(outputEncoding);
+    }
+
+    private TranslationBackend createBackend() throws IOException {
+        if (translationBackend != null)
+            return translationBackend;
+        if (backend == null || backend.equals(GoogleTranslationBackend.NAME)) {
+            GoogleTranslationBackend google = new GoogleTranslationBackend();
+            google.setApikey(apikey);
+            google.setEndpoint(endpoint);
+            google.setConnections(Math.max(1, requestsInFlight));
+            google.setCompressRequests(compressRequests);
+            return google;
+        }
+        if (backend.equals(StubTranslationBackend.NAME)) {
+            return new StubTranslationBackend();
+        }
         try {
-            translated.store(out, "Auto generated by Google Translate V2 API maven plugin");
-        } finally {
-            out.close();
+            return (TranslationBackend) Class.forName(backend).newInstance();
+        } catch (Exception e) {
+            throw new IOException("Unknown translation backend '" + backend
+                            + "'. Use google, stub or the class name of a TranslationBackend.", e);
         }
+    }
 
-        if (needCacheWrite) {
-            out = new FileOutputStream(previousTranslation);
+    private Map<String, BundleFormat> createBundleFormats() throws IOException {
+        Map<String, BundleFormat> formats = new LinkedHashMap<String, BundleFormat>();
+        for (BundleFormat f : new BundleFormat[] { new PropertiesFormat(), new JsonFormat(), new PoFormat() }) {
+            formats.put(f.getExtension(), f);
+        }
+        for (String name : bundleFormats) {
             try {
-                cached.store(out, "Cache of auto generated google translations for Google Translate V2 API maven plugin");
-            } finally {
-                out.close();
+                BundleFormat f = (BundleFormat) Class.forName(name).newInstance();
+                formats.put(f.getExtension(), f);
+            } catch (Exception e) {
+                throw new IOException("Unknown bundle format '" + name + "'. Use the class name of a BundleFormat.", e);
             }
         }
+        return formats;
+    }
+
+    /**
+     * The configured limit, or the backend's limit if that is lower (a backend
+     * limit of 0 or less is no limit).
+     */
+    private static int limit(int configured, int backendLimit) {
+        return backendLimit <= 0 ? configured : Math.min(configured, backendLimit);
+    }
+
+    /**
+     * Whether to send tags in place of what must not be translated, rather
+     * than spans.
+     */
+    private boolean isTags(TranslationBackend translator) {
+        if (noTranslatePattern.isEmpty() || !useHtmlForNonTranslatable)
+            return false;
+        if (placeholders == null)
+            return translator instanceof GoogleTranslationBackend || translator instanceof StubTranslationBackend;
+        return placeholders.equals("tag");
+    }
 
+    private PatternReplacer createReplacer() {
+        PatternReplacer replacer = new PatternReplacer();
+        if (!noTranslatePattern.isEmpty() && useHtmlForNonTranslatable) {
+            replacer.setUntranslatableStrings("<span class=\"notranslate\">NO_TRANSLATE</span>", "NO_TRANSLATE");
+        }
+        for (String p : noTranslatePattern) {
+            replacer.addPattern(p);
+        }
+        return replacer;
     }
 
-    private boolean isIncludeKey(String keyName) {
+    boolean isIncludeKey(String keyName) {
         return !matches(excludeKeys, keyName);
     }
 
@@ -533,7 +1569,67 @@ public class Translater {
         return false;
     }
 
-    void translateOps(List<TranslationOp> sources, String sourceLang, String targetLang) throws IOException {
+    /**
+     * Translate a batch, making the request again (after a delay) if it fails
+     * in a way that may not happen next time.
+     */
+    private void translateWithRetry(TranslationBackend translator, List<TranslationOp> batch, String language,
+                                    TaskLog log) throws IOException, InterruptedException {
+        int characters = characters(batch);
+        int saved = 0;
+        for (TranslationOp op : batch) {
+            saved += op.saved;
+        }
+        for (int attempt = 0;; attempt++) {
+            long delay;
+            long permit = limiter.acquire(characters);
+            long started = System.nanoTime();
+            try {
+                translateOps(translator, batch, sourceLanguage, language);
+                metrics.request(batch.size(), characters, saved, System.nanoTime() - started);
+                limiter.succeeded();
+                return;
+            } catch (RetryableTranslationException rte) {
+                metrics.request(batch.size(), characters, saved, System.nanoTime() - started);
+                metrics.retry(rte.isThrottled());
+                if (rte.isThrottled() && limiter.throttled(permit)) {
+                    log.warn("Translation is being throttled, reducing requests in flight to "
+                                    + limiter.getConcurrency());
+                }
+                if (attempt >= maxRetries) {
+                    throw new IOException("Gave up translating into " + language + " after " + (attempt + 1)
+                                    + " attempts", rte);
+                }
+                delay = limiter.backoff(attempt, rte.getRetryAfter());
+                log.warn("Failed to translate into " + language + " (" + rte.getMessage() + "), retrying in "
+                                + delay + "ms");
+            } finally {
+                limiter.release();
+            }
+            Thread.sleep(delay);
+        }
+    }
+
+    private static int characters(List<TranslationOp> batch) {
+        int characters = 0;
+        for (TranslationOp op : batch) {
+            characters += op.value.length();
+        }
+        return characters;
+    }
+
+    private void writeMetrics() {
+        if (metricsFile == null)
+            return;
+        try {
+            metrics.write(metricsFile);
+        } catch (IOException ioe) {
+            LOG.warn("Failed to write metrics to " + metricsFile, ioe);
+        }
+    }
+
+    void translateOps(TranslationBackend translator, List<TranslationOp> sources, String sourceLang, String targetLang)
+                    throws IOException {
         List<String> strings = new ArrayList<String>();
         String format = null;
         for (TranslationOp op : sources) {
@@ -543,41 +1639,55 @@ public class Translater {
             }
             format = op.format;
         }
-        Translate.Translations.List res = client.translations().list(strings, targetLang);
-        res.setSource(sourceLang);
-        res.setFormat(format);
         try {
-            TranslationsListResponse c = res.execute();
-            List<TranslationsResource> translations = c.getTranslations();
-            Iterator<TranslationsResource> it = translations.iterator();
+            List<String> translations = translator.translate(strings, sourceLang, targetLang, format);
+            if (translations.size() != sources.size()) {
+                throw new IOException("Expected " + sources.size() + " translations, but got " + translations.size());
+            }
+            Iterator<String> it = translations.iterator();
             for (TranslationOp op : sources) {
-                op.translated = it.next().getTranslatedText();
+                op.translated = it.next();
 
                 /* Convert back to original format */
                 if (!op.format.equals(op.originalFormat) && op.originalFormat.equals("text")) {
                     op.translated = StringEscapeUtils.unescapeHtml4(op.translated);
                 }
             }
+        } catch (RetryableTranslationException rte) {
+            throw rte;
         } catch (Exception e) {
             throw new IOException("Failed while translating '" + sources.toString() + "' from " + sourceLang + " into "
                             + targetLang, e);
         }
     }
 
-    private String hash(String content) {
+    static String hash(String content) {
+        return ContentHash.of(content);
+    }
+
+    /**
+     * Read a whole bundle, for overrides, which are only looked up by key.
+     */
+    private static Map<String, String> read(File path, BundleFormat bundleFormat, String type, TaskLog log)
+                    throws IOException {
+        log.debug("Loading " + type + " file " + path.getAbsolutePath());
+        final Map<String, String> entries = new HashMap<String, String>();
         try {
-            MessageDigest digest = java.security.MessageDigest.getInstance("MD5");
-            digest.update(content.getBytes("UTF-8"));
-            byte[] hash = digest.digest();
-            return Hex.encodeHexString(hash);
-        } catch (Exception e) {
-            throw new IllegalStateException("");
+            bundleFormat.read(path, new BundleFormat.Handler() {
+                @Override
+                public void entry(String key, String value) {
+                    entries.put(key, value);
+                }
+            });
+        } catch (FileNotFoundException ex) {
+            // Removed since the index was built
         }
+        return entries;
     }
 
-    private Properties loadProperties(File path, String type) throws UnsupportedEncodingException, IOException {
+    Properties loadProperties(File path, String type, TaskLog log) throws UnsupportedEncodingException, IOException {
         if (path.exists()) {
-            LOG.info("Loading " + type + " file " + path.getAbsolutePath());
+            log.debug("Loading " + type + " file " + path.getAbsolutePath());
         }
         Properties p = new Properties();
         try {
@@ -588,21 +1698,90 @@ public class Translater {
                 in.close();
             }
         } catch (FileNotFoundException ex) {
-            if (type.equals("cache")) {
-                LOG.warn("Could not find cache file " + path + " so a complete translation will be performed");
-            }
+            // Optional file (e.g. no override)
         }
 
         return p;
     }
 
-    class TranslationOp {
+    abstract class Task implements Callable<Void> {
+        TaskLog log;
+
+        Task(TaskLog log) {
+            this.log = log;
+        }
+
+        @Override
+        public Void call() throws Exception {
+            run();
+            return null;
+        }
+
+        abstract void run() throws Exception;
+    }
+
+    /**
+     * The translation memory and build manifest in one cache directory. When
+     * translating several projects at once there is one for each project.
+     */
+    static class CacheDir {
+        final File dir;
+        final BuildManifest manifest;
+        TranslationMemory memory;
+
+        CacheDir(File dir) {
+            this.dir = dir;
+            manifest = new BuildManifest(new File(dir, BuildManifest.FILENAME));
+        }
+    }
+
+    class BundleJob {
+        File sourceFile;
+        BundleFormat bundleFormat;
+        String baseName;
+        File destinationDir;
+        File sourceCacheDir;
+        String language;
+        File overrideFile;
+        File targetFile;
+        PreparedBundle prepared;
+        Map<String, String> translated = new HashMap<String, String>();
+        List<TranslationOp> ops = new ArrayList<TranslationOp>();
+        AtomicInteger pending = new AtomicInteger();
+        volatile Task writeTask;
+        volatile Future<Void> written;
+        TaskLog log = new TaskLog();
+        TranslationMetrics.BundleCounts counts;
+        CacheDir cache;
+        BundleIndex.Entry source;
+        BundleIndex.Entry override;
+
+        BundleJob(File sourceFile, BundleFormat bundleFormat, String baseName, File destinationDir,
+                  File sourceCacheDir, String language) {
+            this.sourceFile = sourceFile;
+            this.bundleFormat = bundleFormat;
+            this.baseName = baseName;
+            this.destinationDir = destinationDir;
+            this.sourceCacheDir = sourceCacheDir;
+            this.language = language;
+            overrideFile = new File(sourceFile.getParentFile(), baseName + "_" + language
+                            + bundleFormat.getExtension());
+            targetFile = new File(destinationDir, baseName + "_" + language + bundleFormat.getExtension());
+        }
+    }
+
+    static class TranslationOp {
         String keyName;
         String value;
         List<String> map;
         String translated;
         String format;
         String originalFormat;
+        String cacheKey;
+        int saved;
+        BundleJob job;
+        PreparedBundle.Entry entry;
+        List<TranslationOp> duplicates = new ArrayList<TranslationOp>(0);
 
         TranslationOp(String keyName, String value, List<String> map, String format, String originalFormat) {
             this.keyName = keyName;
@@ -0,0 +1,48 @@
+package com.nervepoint.googletranslate;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Something that can translate text, such as Google Translate. The translater
+ * packs the text to translate into batches no bigger than the backend says it
+ * can take, and may have several batches in flight at once, so
+ * {@link #translate(List, String, String, String)} must be safe to call from
+ * more than one thread.
+ */
+public interface TranslationBackend {
+
+    /**
+     * A short name for the backend. Translations are cached per backend, so
+     * this should not change between versions.
+     */
+    String getName();
+
+    /**
+     * The most strings that may be sent in one call, or 0 if there is no limit.
+     */
+    int getMaxSources();
+
+    /**
+     * The most characters that may be sent in one call, or 0 if there is no
+     * limit.
+     */
+    int getMaxCharacters();
+
+    void open() throws IOException;
+
+    /**
+     * Translate a batch of strings.
+     *
+     * @param texts text to translate, all in the same format
+     * @param sourceLanguage language the text is in
+     * @param targetLanguage language to translate the text into
+     * @param format <code>text</code> or <code>html</code>
+     * @return the translations, in the same order as the text
+     * @throws IOException if the text could not be translated
+     */
+    List<String> translate(List<String> texts, String sourceLanguage, String targetLanguage, String format)
+                    throws IOException;
+
+    void close() throws IOException;
+}
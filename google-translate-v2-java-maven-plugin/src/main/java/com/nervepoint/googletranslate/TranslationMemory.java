@@ -0,0 +1,306 @@
+package com.nervepoint.googletranslate;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A single store of every translation made for a cache directory, keyed by
+ * source language, target language, format and a hash of the text that was
+ * sent. Translations are appended to a log file, which is memory mapped when
+ * opened. Only the keys are read up front to build the index, the translated
+ * text is decoded when it is asked for. If a key is written more than once,
+ * the last record wins.
+ * <p>
+ * The file may be shared by builds running at the same time. New translations
+ * are held in memory until {@link #flush()}, which appends them while holding
+ * the {@link CacheLock} for the directory, after first reading anything the
+ * other builds have appended since. So every build's translations end up in
+ * the file and none are lost. Records are only ever appended, so the file can
+ * be read without the lock, an incomplete record at the end is just ignored.
+ */
+public class TranslationMemory implements Closeable {
+
+    final static Logger LOG = LoggerFactory.getLogger(TranslationMemory.class);
+
+    public static final String FILENAME = "translation-memory.tm";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final byte[] MAGIC = new byte[] { 'I', '1', '8', 'N', 'T', 'M' };
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = MAGIC.length + 4;
+    private static final int FLUSH_SIZE = 1024 * 1024;
+
+    private final File file;
+    private final Map<String, Integer> offsets = new HashMap<String, Integer>();
+    private final Map<String, String> added = new LinkedHashMap<String, String>();
+    private MappedByteBuffer buffer;
+    private long validLength;
+    private int addedSize;
+    private boolean readOnly;
+
+    public TranslationMemory(File file) {
+        this.file = file;
+    }
+
+    public static String key(String sourceLanguage, String targetLanguage, String format, String hash) {
+        return sourceLanguage + "|" + targetLanguage + "|" + format + "|" + hash;
+    }
+
+    /**
+     * The key for a translation made by the named backend. Translations made by
+     * Google use the plain key, as they did before other backends existed.
+     */
+    public static String key(String backend, String sourceLanguage, String targetLanguage, String format, String hash) {
+        String key = key(sourceLanguage, targetLanguage, format, hash);
+        return backend == null || backend.equals(GoogleTranslationBackend.NAME) ? key : backend + "|" + key;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * When read only, translations that are put are kept in memory but never
+     * written to the file.
+     */
+    public void setReadOnly(boolean readOnly) {
+        this.readOnly = readOnly;
+    }
+
+    public synchronized void open() throws IOException {
+        offsets.clear();
+        added.clear();
+        addedSize = 0;
+        buffer = null;
+        validLength = 0;
+        if (file.length() >= HEADER_LENGTH) {
+            map();
+            index();
+        }
+        LOG.info("Translation memory " + file + " has " + size() + " entries");
+    }
+
+    public synchronized int size() {
+        int s = offsets.size();
+        for (String k : added.keySet()) {
+            if (!offsets.containsKey(k))
+                s++;
+        }
+        return s;
+    }
+
+    /**
+     * Every key, in order.
+     */
+    public synchronized SortedSet<String> keys() {
+        SortedSet<String> keys = new TreeSet<String>(offsets.keySet());
+        keys.addAll(added.keySet());
+        return keys;
+    }
+
+    public synchronized boolean containsKey(String key) {
+        return added.containsKey(key) || offsets.containsKey(key);
+    }
+
+    public synchronized String get(String key) {
+        String v = added.get(key);
+        if (v != null)
+            return v;
+        Integer offset = offsets.get(key);
+        if (offset == null)
+            return null;
+        ByteBuffer b = buffer.duplicate();
+        b.position(offset);
+        int len = b.getInt();
+        byte[] data = new byte[len];
+        b.get(data);
+        return new String(data, UTF8);
+    }
+
+    /**
+     * Pick up translations other builds have appended since the file was last
+     * read. Like reading, this does not need the lock.
+     */
+    public synchronized void refresh() throws IOException {
+        long length = file.length();
+        if (length < validLength) {
+            /* Replaced by something smaller, start again */
+            offsets.clear();
+            validLength = 0;
+        }
+        if (length >= HEADER_LENGTH && length > validLength) {
+            map();
+            index();
+        }
+    }
+
+    /**
+     * Add a translation. It is written to the file by the next
+     * {@link #flush()}, which happens by itself once enough are waiting.
+     */
+    public synchronized void put(String key, String value) throws IOException {
+        if (value.equals(get(key)))
+            return;
+        added.put(key, value);
+        addedSize += key.length() + value.length();
+        if (addedSize >= FLUSH_SIZE)
+            flush();
+    }
+
+    /**
+     * Append the translations added since the last flush to the file, and
+     * pick up any that other builds have appended.
+     */
+    public synchronized void flush() throws IOException {
+        if (added.isEmpty() || readOnly)
+            return;
+        CacheLock lock = CacheLock.acquire(file.getAbsoluteFile().getParentFile());
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                FileChannel ch = raf.getChannel();
+                if (ch.size() < validLength) {
+                    /* Replaced by something smaller, start again */
+                    offsets.clear();
+                    validLength = 0;
+                }
+                if (ch.size() < HEADER_LENGTH) {
+                    ch.truncate(0);
+                    ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+                    header.put(MAGIC).putInt(VERSION).flip();
+                    write(ch, header, 0);
+                    validLength = HEADER_LENGTH;
+                } else if (ch.size() > validLength) {
+                    /* Read what others have added */
+                    map();
+                    index();
+                }
+                if (ch.size() > validLength) {
+                    /*
+                     * Drop any partial record left by an interrupted write. We
+                     * hold the lock, so no one is still writing it
+                     */
+                    ch.truncate(validLength);
+                }
+                write(ch, encodeAdded(), validLength);
+            } finally {
+                raf.close();
+            }
+            map();
+            index();
+            added.clear();
+            addedSize = 0;
+        } finally {
+            lock.close();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            buffer = null;
+        }
+    }
+
+    private ByteBuffer encodeAdded() {
+        int size = 0;
+        List<byte[]> encoded = new ArrayList<byte[]>(added.size() * 2);
+        for (Map.Entry<String, String> en : added.entrySet()) {
+            byte[] k = en.getKey().getBytes(UTF8);
+            byte[] v = en.getValue().getBytes(UTF8);
+            encoded.add(k);
+            encoded.add(v);
+            size += 8 + k.length + v.length;
+        }
+        ByteBuffer b = ByteBuffer.allocate(size);
+        for (byte[] e : encoded) {
+            b.putInt(e.length);
+            b.put(e);
+        }
+        b.flip();
+        return b;
+    }
+
+    private static void write(FileChannel ch, ByteBuffer b, long position) throws IOException {
+        while (b.hasRemaining()) {
+            position += ch.write(b, position);
+        }
+    }
+
+    private void map() throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel ch = raf.getChannel();
+            buffer = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Index the records from where the last call got to up to the end of the
+     * mapped file.
+     */
+    private void index() throws IOException {
+        ByteBuffer b = buffer.duplicate();
+        if (validLength == 0) {
+            if (b.remaining() < HEADER_LENGTH) {
+                throw new IOException(file + " is not a translation memory.");
+            }
+            byte[] magic = new byte[MAGIC.length];
+            b.get(magic);
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (magic[i] != MAGIC[i])
+                    throw new IOException(file + " is not a translation memory.");
+            }
+            int version = b.getInt();
+            if (version != VERSION) {
+                throw new IOException(file + " is version " + version
+                                + " of the translation memory format, expected " + VERSION);
+            }
+            validLength = b.position();
+        } else {
+            b.position((int) validLength);
+        }
+        while (b.remaining() >= 4) {
+            int klen = b.getInt();
+            if (klen < 0 || b.remaining() < klen + 4)
+                break;
+            byte[] k = new byte[klen];
+            b.get(k);
+            int voffset = b.position();
+            int vlen = b.getInt();
+            if (vlen < 0 || b.remaining() < vlen)
+                break;
+            b.position(b.position() + vlen);
+            offsets.put(new String(k, UTF8), voffset);
+            validLength = b.position();
+        }
+        if (validLength < buffer.capacity()) {
+            LOG.debug("Translation memory " + file
+                            + " has an incomplete record at the end, it is being written or was interrupted");
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package com.nervepoint.googletranslate;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.codehaus.jackson.map.ObjectMapper;
+
+/**
+ * What happened during a run of the {@link Translater}, collected from all of
+ * its threads. Times for each stage are the total across all threads, so may
+ * add up to more than the time the run took.
+ */
+public class TranslationMetrics {
+
+    /**
+     * Counts for one bundle translated into one language.
+     */
+    static class BundleCounts {
+        final String bundle;
+        final String language;
+        final AtomicLong cacheHits = new AtomicLong();
+        final AtomicLong cacheMisses = new AtomicLong();
+        final AtomicLong overridden = new AtomicLong();
+
+        BundleCounts(String bundle, String language) {
+            this.bundle = bundle;
+            this.language = language;
+        }
+    }
+
+    private final long started = System.currentTimeMillis();
+    private long finished;
+    private String backend;
+    private final Map<String, BundleCounts> bundles = new LinkedHashMap<String, BundleCounts>();
+    private final AtomicLong upToDate = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong strings = new AtomicLong();
+    private final AtomicLong charactersSent = new AtomicLong();
+    private final AtomicLong charactersSaved = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong filesWritten = new AtomicLong();
+    private final AtomicLong filesUnchanged = new AtomicLong();
+    private final AtomicLong parseTime = new AtomicLong();
+    private final AtomicLong preprocessTime = new AtomicLong();
+    private final AtomicLong networkTime = new AtomicLong();
+    private final AtomicLong writeTime = new AtomicLong();
+    private final AtomicLong remoteLookups = new AtomicLong();
+    private final AtomicLong remoteHits = new AtomicLong();
+    private final AtomicLong remoteTime = new AtomicLong();
+    private final AtomicLong remoteStored = new AtomicLong();
+    private final List<Long> latencies = new ArrayList<Long>();
+    private double fillTotal;
+    private int batches;
+
+    void setBackend(String backend) {
+        this.backend = backend;
+    }
+
+    synchronized BundleCounts bundle(String bundle, String language) {
+        String key = bundle + "|" + language;
+        BundleCounts c = bundles.get(key);
+        if (c == null) {
+            c = new BundleCounts(bundle, language);
+            bundles.put(key, c);
+        }
+        return c;
+    }
+
+    void upToDate(int count) {
+        upToDate.addAndGet(count);
+    }
+
+    void duplicates(int count) {
+        duplicates.addAndGet(count);
+    }
+
+    /**
+     * A batch was packed, with the given fraction of the most it could hold
+     * (by strings or characters, whichever it is nearest to).
+     */
+    synchronized void batch(double fill) {
+        fillTotal += fill;
+        batches++;
+    }
+
+    /**
+     * A request was made, whether or not it succeeded. Saved characters are
+     * those that would also have been sent if spans were used rather than
+     * tags.
+     */
+    void request(int strings, int characters, int saved, long nanos) {
+        requests.incrementAndGet();
+        this.strings.addAndGet(strings);
+        charactersSent.addAndGet(characters);
+        charactersSaved.addAndGet(saved);
+        networkTime.addAndGet(nanos);
+        synchronized (latencies) {
+            latencies.add(nanos);
+        }
+    }
+
+    void retry(boolean wasThrottled) {
+        retries.incrementAndGet();
+        if (wasThrottled)
+            throttled.incrementAndGet();
+    }
+
+    /**
+     * Keys were looked up in the remote cache, and some found.
+     */
+    void remoteLookup(int keys, int hits, long nanos) {
+        remoteLookups.addAndGet(keys);
+        remoteHits.addAndGet(hits);
+        remoteTime.addAndGet(nanos);
+    }
+
+    void remoteStored(int count) {
+        remoteStored.addAndGet(count);
+    }
+
+    void parsed(long nanos) {
+        parseTime.addAndGet(nanos);
+    }
+
+    void preprocessed(long nanos) {
+        preprocessTime.addAndGet(nanos);
+    }
+
+    void written(long bytes, long nanos) {
+        filesWritten.incrementAndGet();
+        bytesWritten.addAndGet(bytes);
+        writeTime.addAndGet(nanos);
+    }
+
+    /**
+     * A file was not written, as it already had the right content.
+     */
+    void unchanged(long nanos) {
+        filesUnchanged.incrementAndGet();
+        writeTime.addAndGet(nanos);
+    }
+
+    void finished() {
+        finished = System.currentTimeMillis();
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getCharactersSent() {
+        return charactersSent.get();
+    }
+
+    public long getCharactersSaved() {
+        return charactersSaved.get();
+    }
+
+    public synchronized long getCacheHits() {
+        long hits = 0;
+        for (BundleCounts c : bundles.values()) {
+            hits += c.cacheHits.get();
+        }
+        return hits;
+    }
+
+    public synchronized long getCacheMisses() {
+        long misses = 0;
+        for (BundleCounts c : bundles.values()) {
+            misses += c.cacheMisses.get();
+        }
+        return misses;
+    }
+
+    public long getRemoteHits() {
+        return remoteHits.get();
+    }
+
+    public long getRemoteStored() {
+        return remoteStored.get();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    /**
+     * The given percentile of request latency, in milliseconds.
+     */
+    public long getLatency(double percentile) {
+        List<Long> sorted;
+        synchronized (latencies) {
+            sorted = new ArrayList<Long>(latencies);
+        }
+        if (sorted.isEmpty())
+            return 0;
+        Collections.sort(sorted);
+        int idx = (int) Math.ceil(percentile / 100 * sorted.size()) - 1;
+        return millis(sorted.get(Math.max(0, Math.min(sorted.size() - 1, idx))));
+    }
+
+    /**
+     * A line or two for the build log.
+     */
+    public String getSummary() {
+        long hits = getCacheHits();
+        long misses = getCacheMisses();
+        StringBuilder b = new StringBuilder();
+        b.append(hits).append(" cached, ").append(misses).append(" translated");
+        if (remoteLookups.get() > 0)
+            b.append(" (").append(remoteHits.get()).append(" found in the remote cache)");
+        if (upToDate.get() > 0)
+            b.append(", ").append(upToDate.get()).append(" bundle/language pairs up to date");
+        b.append(". ").append(requests.get()).append(" request(s) sending ").append(charactersSent.get())
+                        .append(" characters");
+        if (charactersSaved.get() > 0)
+            b.append(" (").append(charactersSaved.get()).append(" saved by placeholder tags)");
+        if (requests.get() > 0) {
+            b.append(" (p50 ").append(getLatency(50)).append("ms, p95 ").append(getLatency(95)).append("ms, p99 ")
+                            .append(getLatency(99)).append("ms");
+            if (retries.get() > 0)
+                b.append(", ").append(retries.get()).append(" retried");
+            b.append(")");
+        }
+        b.append(". Wrote ").append(filesWritten.get()).append(" file(s), ").append(bytesWritten.get())
+                        .append(" bytes");
+        if (filesUnchanged.get() > 0)
+            b.append(", ").append(filesUnchanged.get()).append(" unchanged");
+        return b.toString();
+    }
+
+    /**
+     * Write the metrics as JSON.
+     */
+    public void write(File file) throws IOException {
+        Map<String, Object> root = new LinkedHashMap<String, Object>();
+        root.put("started", started);
+        root.put("durationMillis", (finished == 0 ? System.currentTimeMillis() : finished) - started);
+        root.put("backend", backend);
+
+        Map<String, Object> cache = new LinkedHashMap<String, Object>();
+        cache.put("hits", getCacheHits());
+        cache.put("misses", getCacheMisses());
+        cache.put("duplicates", duplicates.get());
+        cache.put("upToDatePairs", upToDate.get());
+        Map<String, Map<String, Long>> byLanguage = new TreeMap<String, Map<String, Long>>();
+        List<Map<String, Object>> byBundle = new ArrayList<Map<String, Object>>();
+        synchronized (this) {
+            for (BundleCounts c : bundles.values()) {
+                Map<String, Long> l = byLanguage.get(c.language);
+                if (l == null) {
+                    l = new LinkedHashMap<String, Long>();
+                    l.put("hits", 0L);
+                    l.put("misses", 0L);
+                    l.put("overridden", 0L);
+                    byLanguage.put(c.language, l);
+                }
+                l.put("hits", l.get("hits") + c.cacheHits.get());
+                l.put("misses", l.get("misses") + c.cacheMisses.get());
+                l.put("overridden", l.get("overridden") + c.overridden.get());
+
+                Map<String, Object> m = new LinkedHashMap<String, Object>();
+                m.put("bundle", c.bundle);
+                m.put("language", c.language);
+                m.put("hits", c.cacheHits.get());
+                m.put("misses", c.cacheMisses.get());
+                m.put("overridden", c.overridden.get());
+                byBundle.add(m);
+            }
+        }
+        cache.put("languages", byLanguage);
+        cache.put("bundles", byBundle);
+        root.put("cache", cache);
+
+        if (remoteLookups.get() > 0 || remoteStored.get() > 0) {
+            Map<String, Object> remote = new LinkedHashMap<String, Object>();
+            remote.put("lookups", remoteLookups.get());
+            remote.put("hits", remoteHits.get());
+            remote.put("stored", remoteStored.get());
+            remote.put("timeMillis", millis(remoteTime.get()));
+            root.put("remoteCache", remote);
+        }
+
+        Map<String, Object> req = new LinkedHashMap<String, Object>();
+        req.put("count", requests.get());
+        req.put("retries", retries.get());
+        req.put("throttled", throttled.get());
+        req.put("strings", strings.get());
+        req.put("characters", charactersSent.get());
+        req.put("charactersSaved", charactersSaved.get());
+        synchronized (this) {
+            req.put("batches", batches);
+            req.put("fillRatio", batches == 0 ? 0 : fillTotal / batches);
+        }
+        Map<String, Object> latency = new LinkedHashMap<String, Object>();
+        latency.put("p50", getLatency(50));
+        latency.put("p95", getLatency(95));
+        latency.put("p99", getLatency(99));
+        latency.put("max", getLatency(100));
+        req.put("latencyMillis", latency);
+        root.put("requests", req);
+
+        Map<String, Object> time = new LinkedHashMap<String, Object>();
+        time.put("parse", millis(parseTime.get()));
+        time.put("preprocess", millis(preprocessTime.get()));
+        time.put("network", millis(networkTime.get()));
+        time.put("write", millis(writeTime.get()));
+        root.put("timeMillis", time);
+
+        Map<String, Object> output = new LinkedHashMap<String, Object>();
+        output.put("files", filesWritten.get());
+        output.put("unchanged", filesUnchanged.get());
+        output.put("bytes", bytesWritten.get());
+        root.put("output", output);
+
+        file.getParentFile().mkdirs();
+        new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(file, root);
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+}
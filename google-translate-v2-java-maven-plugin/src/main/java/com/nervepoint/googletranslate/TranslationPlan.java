@@ -0,0 +1,238 @@
+package com.nervepoint.googletranslate;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.codehaus.jackson.map.ObjectMapper;
+
+/**
+ * What a run of the {@link Translater} would send to the backend, worked out
+ * without sending anything. Characters are those that would be billed, so text
+ * sent once for several bundles is only counted for the first.
+ */
+public class TranslationPlan {
+
+    /**
+     * What one bundle needs translating into one language.
+     */
+    public static class Item {
+        private final String bundle;
+        private final String language;
+        private long keys;
+        private long characters;
+        private long requests;
+
+        Item(String bundle, String language) {
+            this.bundle = bundle;
+            this.language = language;
+        }
+
+        public String getBundle() {
+            return bundle;
+        }
+
+        public String getLanguage() {
+            return language;
+        }
+
+        /**
+         * Keys that are not overridden or cached, so would be translated.
+         */
+        public long getKeys() {
+            return keys;
+        }
+
+        /**
+         * Characters that would be billed for this bundle.
+         */
+        public long getCharacters() {
+            return characters;
+        }
+
+        /**
+         * Requests that would carry some of this bundle's text.
+         */
+        public long getRequests() {
+            return requests;
+        }
+    }
+
+    private final Map<String, Item> items = new TreeMap<String, Item>();
+    private final Map<String, Long> requestsByLanguage = new TreeMap<String, Long>();
+    private final Map<String, Long> charactersByLanguage = new TreeMap<String, Long>();
+    private long charactersSaved;
+    private long upToDate;
+    private long projectedMillis;
+    private double costPerMillionCharacters;
+
+    Item item(String bundle, String language) {
+        String key = bundle + "|" + language;
+        Item item = items.get(key);
+        if (item == null) {
+            item = new Item(bundle, language);
+            items.put(key, item);
+        }
+        return item;
+    }
+
+    void key(String bundle, String language) {
+        item(bundle, language).keys++;
+    }
+
+    void characters(String bundle, String language, int characters, int saved) {
+        item(bundle, language).characters += characters;
+        charactersSaved += saved;
+        Long c = charactersByLanguage.get(language);
+        charactersByLanguage.put(language, (c == null ? 0 : c) + characters);
+    }
+
+    void request(String language, Iterable<Item> touched) {
+        for (Item item : touched) {
+            item.requests++;
+        }
+        Long r = requestsByLanguage.get(language);
+        requestsByLanguage.put(language, (r == null ? 0 : r) + 1);
+    }
+
+    void upToDate(int count) {
+        upToDate += count;
+    }
+
+    /**
+     * Work out how long the requests would take, if each took the given
+     * latency, with at most the given number in flight and no more than the
+     * rate limits allow (0 for no limit).
+     */
+    void project(int requestsInFlight, double requestsPerSecond, double charactersPerSecond, long latency) {
+        long requests = getRequests();
+        double millis = Math.ceil((double) requests / Math.max(1, requestsInFlight)) * latency;
+        if (requestsPerSecond > 0)
+            millis = Math.max(millis, requests / requestsPerSecond * 1000);
+        if (charactersPerSecond > 0)
+            millis = Math.max(millis, getCharacters() / charactersPerSecond * 1000);
+        projectedMillis = (long) millis;
+    }
+
+    void setCostPerMillionCharacters(double costPerMillionCharacters) {
+        this.costPerMillionCharacters = costPerMillionCharacters;
+    }
+
+    public List<Item> getItems() {
+        return Collections.unmodifiableList(new ArrayList<Item>(items.values()));
+    }
+
+    public long getKeys() {
+        long keys = 0;
+        for (Item item : items.values()) {
+            keys += item.keys;
+        }
+        return keys;
+    }
+
+    public long getCharacters() {
+        long characters = 0;
+        for (Long c : charactersByLanguage.values()) {
+            characters += c;
+        }
+        return characters;
+    }
+
+    /**
+     * Characters that would also be billed if spans were sent rather than
+     * placeholder tags.
+     */
+    public long getCharactersSaved() {
+        return charactersSaved;
+    }
+
+    public long getRequests() {
+        long requests = 0;
+        for (Long r : requestsByLanguage.values()) {
+            requests += r;
+        }
+        return requests;
+    }
+
+    public long getProjectedMillis() {
+        return projectedMillis;
+    }
+
+    public double getCost() {
+        return getCharacters() * costPerMillionCharacters / 1000000;
+    }
+
+    /**
+     * A line for each bundle/language pair with something to translate, then
+     * the totals.
+     */
+    public List<String> getReport() {
+        List<String> lines = new ArrayList<String>();
+        for (Item item : items.values()) {
+            if (item.keys > 0) {
+                lines.add(item.bundle + " [" + item.language + "]: " + item.keys + " key(s), " + item.characters
+                                + " characters, " + item.requests + " request(s)");
+            }
+        }
+        lines.add(getSummary());
+        return lines;
+    }
+
+    public String getSummary() {
+        StringBuilder b = new StringBuilder();
+        b.append("Would translate ").append(getKeys()).append(" key(s), sending ").append(getCharacters())
+                        .append(" billable characters");
+        if (charactersSaved > 0)
+            b.append(" (").append(charactersSaved).append(" fewer for using placeholder tags)");
+        b.append(" in ").append(getRequests()).append(" request(s)");
+        if (costPerMillionCharacters > 0)
+            b.append(String.format(" (about %.2f)", getCost()));
+        b.append(", taking about ").append(projectedMillis).append("ms");
+        if (upToDate > 0)
+            b.append(". ").append(upToDate).append(" bundle/language pairs are up to date");
+        return b.toString();
+    }
+
+    /**
+     * Write the plan as JSON.
+     */
+    public void write(File file) throws IOException {
+        Map<String, Object> root = new LinkedHashMap<String, Object>();
+        root.put("keys", getKeys());
+        root.put("characters", getCharacters());
+        root.put("charactersSaved", charactersSaved);
+        root.put("requests", getRequests());
+        root.put("projectedMillis", projectedMillis);
+        root.put("cost", getCost());
+        root.put("upToDatePairs", upToDate);
+
+        Map<String, Object> languages = new LinkedHashMap<String, Object>();
+        for (String language : requestsByLanguage.keySet()) {
+            Map<String, Object> l = new LinkedHashMap<String, Object>();
+            l.put("characters", charactersByLanguage.get(language));
+            l.put("requests", requestsByLanguage.get(language));
+            languages.put(language, l);
+        }
+        root.put("languages", languages);
+
+        List<Map<String, Object>> bundles = new ArrayList<Map<String, Object>>();
+        for (Item item : items.values()) {
+            Map<String, Object> m = new LinkedHashMap<String, Object>();
+            m.put("bundle", item.bundle);
+            m.put("language", item.language);
+            m.put("keys", item.keys);
+            m.put("characters", item.characters);
+            m.put("requests", item.requests);
+            bundles.add(m);
+        }
+        root.put("bundles", bundles);
+
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(file, root);
+    }
+}
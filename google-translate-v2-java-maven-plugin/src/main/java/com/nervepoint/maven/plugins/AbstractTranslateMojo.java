@@ -0,0 +1,368 @@
+package com.nervepoint.maven.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.maven.model.FileSet;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Component;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.DirectoryScanner;
+
+import com.nervepoint.googletranslate.Translatable;
+import com.nervepoint.googletranslate.Translater;
+import com.nervepoint.googletranslate.Translater.TranslatableProvider;
+
+/**
+ * Configuration shared by the goals that translate bundles.
+ */
+public abstract class AbstractTranslateMojo extends AbstractMojo {
+
+	@Parameter(defaultValue = "${api.key}")
+	private String apikey;
+
+	@Parameter(defaultValue = "${basedir}/src/main/resources")
+	protected String sourceDirectory;
+
+	/**
+	 * The bundles to translate, <code>*.properties</code> (or
+	 * <code>**&#47;*.properties</code> when recursing) if not set. The format
+	 * of each bundle is chosen by its extension, <code>.properties</code>,
+	 * <code>.json</code>, <code>.po</code> or that of one of
+	 * {@link #bundleFormats}.
+	 */
+	@Parameter
+	private FileSet fileSet;
+
+	/**
+	 * The class names of any other
+	 * <code>com.nervepoint.googletranslate.BundleFormat</code>s to translate
+	 * bundles with, chosen by their extension.
+	 */
+	@Parameter
+	private List<String> bundleFormats;
+
+	@Parameter
+	private boolean recurse;
+
+	@Parameter(defaultValue = "${basedir}/target/classes")
+	protected String targetDirectory;
+
+	@Parameter(defaultValue = "en")
+	private String sourceLanguage;
+
+	@Parameter
+	private String sourceCountry;
+
+	@Parameter
+	private String sourceScript;
+
+	@Parameter
+	private String sourceVariant;
+
+	@Parameter(defaultValue = "es,fr,nl,it,pl")
+	private String languages;
+
+	@Parameter(defaultValue = "${translateCacheDir}")
+	private String cacheDir;
+
+	@Parameter
+	private String cacheTag;
+
+	@Parameter
+	private String format;
+
+	@Parameter(defaultValue = "true")
+	private boolean useHtmlForNonTranslatable = true;
+
+	/**
+	 * How text matching {@link #noTranslatePattern} is marked when sent as
+	 * html, <code>tag</code> for short numbered tags or <code>span</code> for
+	 * the notranslate spans earlier versions sent. If not set, tags are used
+	 * with the <code>google</code> and <code>stub</code> backends and spans
+	 * with any other.
+	 */
+	@Parameter
+	private String placeholders;
+
+	@Parameter
+	private int maxSourcesPerCall = 10;
+
+	/**
+	 * Maximum number of characters to send in a single request.
+	 */
+	@Parameter(defaultValue = "5000")
+	private int maxCharactersPerCall = 5000;
+
+	@Parameter
+	private List<String> noTranslatePattern = new ArrayList<String>();
+
+	@Parameter
+	private List<String> excludeKeys = new ArrayList<String>();
+
+	@Parameter(defaultValue = "true")
+	private boolean failOnMissingCacheDir;
+
+	@Parameter(defaultValue = "false")
+	protected boolean failOnMissingSourceDir;
+
+	/**
+	 * Number of bundle/language pairs to translate at the same time.
+	 */
+	@Parameter(defaultValue = "4")
+	private int threads = 4;
+
+	/**
+	 * Maximum number of translation requests to have in flight at the same
+	 * time. This is also the size of the HTTP connection pool.
+	 */
+	@Parameter(defaultValue = "4")
+	private int requestsInFlight = 4;
+
+	/**
+	 * Maximum number of times to retry a request that failed because the
+	 * service was busy or unavailable, or we were sending too much.
+	 */
+	@Parameter(defaultValue = "5")
+	private int maxRetries = 5;
+
+	/**
+	 * Milliseconds to wait before the first retry of a failed request. This
+	 * doubles for each further retry (with some randomness).
+	 */
+	@Parameter(defaultValue = "1000")
+	private long retryDelay = 1000;
+
+	/**
+	 * Maximum number of requests to start per second, 0 for no limit.
+	 */
+	@Parameter(defaultValue = "0")
+	private double requestsPerSecond;
+
+	/**
+	 * Maximum number of characters to send per second, 0 for no limit.
+	 */
+	@Parameter(defaultValue = "0")
+	private double charactersPerSecond;
+
+	/**
+	 * Whether to gzip the body of translation requests.
+	 */
+	@Parameter(defaultValue = "true")
+	private boolean compressRequests = true;
+
+	/**
+	 * Root URL of the translation API, only needed to use something other than
+	 * Google's own endpoint (e.g. a proxy or a local stand-in for testing).
+	 */
+	@Parameter
+	private String endpoint;
+
+	/**
+	 * What to translate with. Either <code>google</code>, <code>stub</code>
+	 * (which only marks the text with the target language, for trying out
+	 * settings without using the real service) or the class name of a
+	 * <code>com.nervepoint.googletranslate.TranslationBackend</code>.
+	 */
+	@Parameter(defaultValue = "google")
+	private String backend = "google";
+
+	/**
+	 * Where to write metrics for the run (cache hits, requests, timings and so
+	 * on) as JSON.
+	 */
+	@Parameter(defaultValue = "${project.build.directory}/translate-metrics.json")
+	private File metricsFile;
+
+	/**
+	 * Encoding of the bundles written, either <code>ISO-8859-1</code> (with
+	 * other characters escaped, which every version of Java can read) or
+	 * <code>UTF-8</code> (for Java 9 and later).
+	 */
+	@Parameter(defaultValue = "ISO-8859-1")
+	private String outputEncoding = "ISO-8859-1";
+
+	/**
+	 * A translation cache shared between machines, used for anything not in
+	 * the local cache before it is translated. Either the URL of a server
+	 * (such as <code>com.nervepoint.googletranslate.RemoteCacheServer</code>)
+	 * or a directory on a shared file system.
+	 */
+	@Parameter
+	private String remoteCache;
+
+	/**
+	 * The token the remote cache server needs, if it needs one.
+	 */
+	@Parameter(defaultValue = "${remoteCache.token}")
+	private String remoteCacheToken;
+
+	/**
+	 * Most milliseconds to spend looking up translations in the remote cache,
+	 * and to wait at the end for new translations to be stored in it.
+	 */
+	@Parameter(defaultValue = "2000")
+	private long remoteCacheTimeout = 2000;
+
+	/**
+	 * Whether to store new translations in the remote cache.
+	 */
+	@Parameter(defaultValue = "true")
+	private boolean remoteCachePush = true;
+
+	@Component
+	protected MavenProject project;
+
+	/**
+	 * The cache directory for a project, <code>[cacheDir]/[groupId]/[cacheTag]/[artifactId]</code>.
+	 */
+	protected File getProjectCacheDir(MavenProject project) throws MojoFailureException {
+		return getProjectCacheDir(project, failOnMissingCacheDir);
+	}
+
+	/**
+	 * The cache directory for a project, optionally failing if there is no
+	 * cache for its group/tag yet.
+	 */
+	protected File getProjectCacheDir(MavenProject project, boolean mustExist) throws MojoFailureException {
+		// Work out cache dir
+		File masterCache;
+
+		getLog().info("Cache dir is " + cacheDir);
+
+		if (cacheDir == null || cacheDir.equals("${translateCacheDir}")) {
+			getLog().info("Using default cache");
+			masterCache = new File(System.getProperty("user.home"), ".i18n_cache");
+		} else {
+			getLog().info("Using user defined cache " + cacheDir);
+			masterCache = new File(cacheDir);
+		}
+
+		File rootCacheDir = new File(masterCache,
+				project.getGroupId() + (cacheTag != null ? File.separator + cacheTag : ""));
+
+		getLog().info("Master cache folder for this group/tag is " + rootCacheDir.getAbsolutePath());
+
+		if (!rootCacheDir.exists() && mustExist) {
+			throw new MojoFailureException(
+					"Master cache folder is empty. This will result in full translation of all texts, either set failOnMissingCacheDir to false in plugin configuration, or create the folder to override this setting.");
+		}
+
+		rootCacheDir = new File(rootCacheDir, project.getArtifactId());
+		getLog().info("Actual project cache is " + rootCacheDir.getAbsolutePath());
+		return rootCacheDir;
+	}
+
+	/**
+	 * A translater with this goal's configuration. The caller sets what it is
+	 * to translate.
+	 */
+	protected Translater createTranslater(File rootCacheDir) {
+		Translater translater = new Translater();
+		translater.setCacheDir(rootCacheDir);
+		translater.setExcludeKeys(excludeKeys);
+		translater.setFailOnMissingCacheDir(failOnMissingCacheDir);
+		translater.setApikey(apikey);
+		translater.setFormat(format);
+		translater.setLanguages(languages);
+		translater.setMaxSourcesPerCall(maxSourcesPerCall);
+		translater.setMaxCharactersPerCall(maxCharactersPerCall);
+		translater.setNoTranslatePattern(noTranslatePattern);
+		translater.setSourceCountry(sourceCountry);
+		translater.setSourceLanguage(sourceLanguage);
+		translater.setSourceScript(sourceScript);
+		translater.setSourceVariant(sourceVariant);
+		translater.setUseHtmlForNonTranslatable(useHtmlForNonTranslatable);
+		translater.setPlaceholders(placeholders);
+		translater.setTargetDirectory(new File(targetDirectory));
+		translater.setThreads(threads);
+		translater.setRequestsInFlight(requestsInFlight);
+		translater.setCompressRequests(compressRequests);
+		translater.setMaxRetries(maxRetries);
+		translater.setRetryDelay(retryDelay);
+		translater.setRequestsPerSecond(requestsPerSecond);
+		translater.setCharactersPerSecond(charactersPerSecond);
+		translater.setEndpoint(endpoint);
+		translater.setBackend(backend);
+		translater.setMetricsFile(metricsFile);
+		translater.setOutputEncoding(outputEncoding);
+		if (bundleFormats != null)
+			translater.setBundleFormats(bundleFormats);
+		translater.setRemoteCacheUrl(remoteCache);
+		translater.setRemoteCacheToken(remoteCacheToken);
+		translater.setRemoteCacheTimeout(remoteCacheTimeout);
+		translater.setRemoteCachePush(remoteCachePush);
+		return translater;
+	}
+
+	/**
+	 * The bundles in {@link #sourceDirectory}, found again each time they are
+	 * asked for.
+	 */
+	protected TranslatableProvider getSourceProvider() {
+		return new TranslatableProvider() {
+
+			@Override
+			public Iterable<Translatable> getTranslatables() throws IOException {
+				File sourceDir = new File(sourceDirectory);
+				if (!sourceDir.exists()) {
+
+					if (failOnMissingSourceDir) {
+						throw new IOException("sourceDirectory " + sourceDirectory
+								+ " does not exist. To ignore this setting set failOnMissingSourceDir=false");
+					}
+					getLog().warn("sourceDirectory " + sourceDirectory + " does not exist");
+					return Collections.emptyList();
+				}
+				return scan(sourceDir);
+			}
+		};
+	}
+
+	/**
+	 * The bundles in a source directory, as selected by the file set.
+	 */
+	protected List<Translatable> scan(File sourceDir) {
+		DirectoryScanner scanner = new DirectoryScanner();
+		scanner.setBasedir(sourceDir);
+		if (fileSet == null || fileSet.getIncludes() == null || fileSet.getIncludes().size() == 0) {
+			if (recurse) {
+				scanner.setIncludes(new String[] { "*.properties" });
+			} else {
+				scanner.setIncludes(new String[] { "**/*.properties" });
+			}
+		} else {
+			scanner.setIncludes((String[]) fileSet.getIncludes().toArray(new String[0]));
+		}
+		if (fileSet != null && fileSet.getExcludes() != null) {
+			scanner.setExcludes((String[]) fileSet.getExcludes().toArray(new String[0]));
+		}
+		scanner.scan();
+		String[] included = scanner.getIncludedFiles();
+		getLog().info("Found " + included.length + " included files");
+		List<Translatable> files = new ArrayList<Translatable>(included.length);
+		for (String s : included) {
+			files.add(new Translatable(sourceDir, new File(sourceDir, s)));
+		}
+		return files;
+	}
+
+	protected void translate(Translater translater) throws MojoExecutionException {
+		// Go!
+		try {
+			translater.execute();
+		} catch (IOException e) {
+			throw new MojoExecutionException("Failed to translate.", e);
+		} finally {
+			if (translater.getMetrics() != null && !translater.isPlan()) {
+				getLog().info(translater.getMetrics().getSummary());
+			}
+		}
+	}
+}
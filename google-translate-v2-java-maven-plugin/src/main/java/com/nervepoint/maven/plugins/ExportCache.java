@@ -0,0 +1,54 @@
+package com.nervepoint.maven.plugins;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Component;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProjectHelper;
+
+import com.nervepoint.googletranslate.CacheSnapshot;
+
+/**
+ * Exports this project's translation cache as a single snapshot file, and
+ * attaches it to the project so it is deployed with it. Another machine can
+ * then warm its cache with <code>import-cache</code> instead of translating
+ * everything again.
+ */
+@Mojo(name = "export-cache", defaultPhase = LifecyclePhase.PACKAGE, threadSafe = true)
+public class ExportCache extends AbstractTranslateMojo {
+
+	/**
+	 * Where to write the snapshot.
+	 */
+	@Parameter(defaultValue = "${project.build.directory}")
+	private File snapshotDirectory;
+
+	/**
+	 * Whether to attach the snapshot to the project, with the classifier
+	 * <code>i18n-cache</code>.
+	 */
+	@Parameter(defaultValue = "true")
+	private boolean attach = true;
+
+	@Component
+	private MavenProjectHelper projectHelper;
+
+	public void execute() throws MojoExecutionException, MojoFailureException {
+		File rootCacheDir = getProjectCacheDir(project, false);
+		try {
+			File snapshot = CacheSnapshot.export(rootCacheDir, snapshotDirectory, project.getArtifactId() + "-"
+					+ ImportCache.CLASSIFIER);
+			getLog().info("Exported translation cache to " + snapshot);
+			if (attach) {
+				projectHelper.attachArtifact(project, ImportCache.TYPE, ImportCache.CLASSIFIER, snapshot);
+			}
+		} catch (IOException e) {
+			throw new MojoExecutionException("Failed to export translation cache.", e);
+		}
+	}
+}
@@ -0,0 +1,103 @@
+package com.nervepoint.maven.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Component;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.resolution.ArtifactRequest;
+import org.eclipse.aether.resolution.ArtifactResolutionException;
+
+import com.nervepoint.googletranslate.CacheSnapshot;
+
+/**
+ * Merges a snapshot made by <code>export-cache</code> into this project's
+ * translation cache, before translating. Translations the cache already has
+ * are kept. The snapshot is either a file or an artifact, which is resolved
+ * from the project's repositories.
+ */
+@Mojo(name = "import-cache", defaultPhase = LifecyclePhase.INITIALIZE, threadSafe = true)
+public class ImportCache extends AbstractTranslateMojo {
+
+	static final String CLASSIFIER = "i18n-cache";
+	static final String TYPE = "i18n.gz";
+
+	/**
+	 * A snapshot file to import.
+	 */
+	@Parameter
+	private File snapshotFile;
+
+	/**
+	 * A snapshot artifact to import, as
+	 * <code>groupId:artifactId:version</code>. It is the artifact with the
+	 * <code>i18n-cache</code> classifier that <code>export-cache</code>
+	 * attached. Defaults to this project's.
+	 */
+	@Parameter(defaultValue = "${project.groupId}:${project.artifactId}:${project.version}")
+	private String snapshotArtifact;
+
+	/**
+	 * Whether to fail if the snapshot cannot be found. Otherwise translation
+	 * just starts with whatever is in the cache.
+	 */
+	@Parameter(defaultValue = "false")
+	private boolean failOnMissingSnapshot;
+
+	@Component
+	private RepositorySystem repositorySystem;
+
+	@Parameter(defaultValue = "${repositorySystemSession}", readonly = true, required = true)
+	private RepositorySystemSession repositorySession;
+
+	@Parameter(defaultValue = "${project.remoteProjectRepositories}", readonly = true, required = true)
+	private List<RemoteRepository> remoteRepositories;
+
+	public void execute() throws MojoExecutionException, MojoFailureException {
+		File snapshot = snapshotFile;
+		if (snapshot == null) {
+			snapshot = resolve();
+		}
+		if (snapshot == null || !snapshot.isFile()) {
+			String message = "No translation cache snapshot "
+					+ (snapshot == null ? snapshotArtifact : snapshot.getPath());
+			if (failOnMissingSnapshot)
+				throw new MojoFailureException(message);
+			getLog().warn(message + ", translations that are not cached will be made again.");
+			return;
+		}
+
+		File rootCacheDir = getProjectCacheDir(project, false);
+		try {
+			int added = CacheSnapshot.importInto(snapshot, rootCacheDir);
+			getLog().info("Imported " + added + " translations from " + snapshot);
+		} catch (IOException e) {
+			throw new MojoExecutionException("Failed to import translation cache.", e);
+		}
+	}
+
+	private File resolve() throws MojoFailureException {
+		String[] gav = snapshotArtifact == null ? new String[0] : snapshotArtifact.split(":");
+		if (gav.length != 3) {
+			throw new MojoFailureException("snapshotArtifact must be groupId:artifactId:version, not "
+					+ snapshotArtifact);
+		}
+		DefaultArtifact artifact = new DefaultArtifact(gav[0], gav[1], CLASSIFIER, TYPE, gav[2]);
+		try {
+			return repositorySystem.resolveArtifact(repositorySession,
+					new ArtifactRequest(artifact, remoteRepositories, null)).getArtifact().getFile();
+		} catch (ArtifactResolutionException are) {
+			getLog().debug("Could not resolve " + artifact, are);
+			return null;
+		}
+	}
+}
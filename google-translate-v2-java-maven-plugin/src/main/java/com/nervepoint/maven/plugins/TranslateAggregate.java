@@ -0,0 +1,84 @@
+package com.nervepoint.maven.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+
+import com.nervepoint.googletranslate.Translatable;
+import com.nervepoint.googletranslate.Translater;
+import com.nervepoint.googletranslate.Translater.TranslatableProvider;
+
+/**
+ * Translates the bundles of every project in the reactor in one go, rather
+ * than a project at a time. Text used in more than one project is only sent
+ * once, requests are filled from all projects, and there is one connection
+ * pool for the whole build. The translations are still written to each
+ * project's own target directory and cache.
+ * <p>
+ * <code>sourceDirectory</code> and <code>targetDirectory</code> are taken
+ * relative to each project, so the defaults are the
+ * <code>src/main/resources</code> and <code>target/classes</code> of each.
+ */
+@Mojo(name = "translate-aggregate", aggregator = true, threadSafe = true)
+public class TranslateAggregate extends AbstractTranslateMojo {
+
+	@Parameter(defaultValue = "${reactorProjects}", readonly = true, required = true)
+	private List<MavenProject> reactorProjects;
+
+	public void execute() throws MojoExecutionException, MojoFailureException {
+
+		final List<Translatable> files = new ArrayList<Translatable>();
+		for (MavenProject p : reactorProjects) {
+			File sourceDir = rebase(sourceDirectory, p);
+			if (!sourceDir.exists()) {
+				if (failOnMissingSourceDir) {
+					throw new MojoFailureException("sourceDirectory " + sourceDir + " of " + p.getArtifactId()
+							+ " does not exist. To ignore this setting set failOnMissingSourceDir=false");
+				}
+				getLog().debug("Skipping " + p.getArtifactId() + ", " + sourceDir + " does not exist");
+				continue;
+			}
+
+			getLog().info("Collecting bundles of " + p.getArtifactId());
+			File targetDir = rebase(targetDirectory, p);
+			File projectCacheDir = getProjectCacheDir(p);
+			for (Translatable t : scan(sourceDir)) {
+				t.setTargetDirectory(targetDir);
+				t.setCacheDir(projectCacheDir);
+				files.add(t);
+			}
+		}
+
+		Translater translater = createTranslater(getProjectCacheDir(project));
+		translater.setFileProvider(new TranslatableProvider() {
+			@Override
+			public Iterable<Translatable> getTranslatables() throws IOException {
+				return files;
+			}
+		});
+
+		translate(translater);
+	}
+
+	/**
+	 * A path configured for this project, moved to the same place in another
+	 * one.
+	 */
+	private File rebase(String path, MavenProject other) {
+		File file = new File(path).getAbsoluteFile();
+		String base = project.getBasedir().getAbsolutePath();
+		String abs = file.getPath();
+		if (abs.equals(base))
+			return other.getBasedir();
+		if (abs.startsWith(base + File.separator))
+			return new File(other.getBasedir(), abs.substring(base.length() + 1));
+		return file;
+	}
+}
@@ -0,0 +1,57 @@
+package com.nervepoint.maven.plugins;
+
+import java.io.File;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import com.nervepoint.googletranslate.Translater;
+
+/**
+ * Works out what <code>translate</code> would do with the current
+ * configuration, without translating anything: the keys to translate for each
+ * bundle and language, the billable characters, the number of requests and
+ * about how long they would take. Nothing is written except the plan, and no
+ * API key is needed, so it can be used to check the cost of a change (such as
+ * adding a language) before it is merged.
+ */
+@Mojo(name = "plan", requiresProject = false, threadSafe = true)
+public class TranslatePlan extends AbstractTranslateMojo {
+
+	/**
+	 * Where to write the plan as JSON.
+	 */
+	@Parameter(defaultValue = "${project.build.directory}/translate-plan.json")
+	private File planFile;
+
+	/**
+	 * Milliseconds a request is expected to take, used to project how long the
+	 * requests would take.
+	 */
+	@Parameter(defaultValue = "500")
+	private long planLatency = 500;
+
+	/**
+	 * What the translation service charges per million characters (20 for
+	 * Google at the time of writing), or 0 to leave the cost out.
+	 */
+	@Parameter(defaultValue = "20")
+	private double costPerMillionCharacters = 20;
+
+	public void execute() throws MojoExecutionException, MojoFailureException {
+		Translater translater = createTranslater(getProjectCacheDir(project, false));
+		translater.setFileProvider(getSourceProvider());
+		translater.setPlan(true);
+		translater.setPlanFile(planFile);
+		translater.setPlanLatency(planLatency);
+		translater.setCostPerMillionCharacters(costPerMillionCharacters);
+		translate(translater);
+		if (translater.getPlan() != null) {
+			for (String line : translater.getPlan().getReport()) {
+				getLog().info(line);
+			}
+		}
+	}
+}
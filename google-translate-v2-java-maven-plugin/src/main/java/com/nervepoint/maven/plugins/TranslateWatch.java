@@ -0,0 +1,82 @@
+package com.nervepoint.maven.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import com.nervepoint.googletranslate.BundleWatcher;
+import com.nervepoint.googletranslate.Translater;
+
+/**
+ * Translates, then keeps running, translating again whenever a bundle in the
+ * source directory is saved. The connection to the translation service and
+ * the caches stay loaded between runs, so only the keys whose text changed
+ * are translated and the bundles are written as soon as that is done. Stop it
+ * with Ctrl+C.
+ */
+@Mojo(name = "watch", requiresProject = false, threadSafe = true)
+public class TranslateWatch extends AbstractTranslateMojo {
+
+	/**
+	 * Milliseconds to wait after a bundle is saved for any more changes before
+	 * translating.
+	 */
+	@Parameter(defaultValue = "100")
+	private long quietPeriod = 100;
+
+	public void execute() throws MojoExecutionException, MojoFailureException {
+
+		File rootCacheDir = getProjectCacheDir(project);
+		File sourceDir = new File(sourceDirectory);
+		if (!sourceDir.isDirectory()) {
+			throw new MojoFailureException("sourceDirectory " + sourceDirectory + " does not exist");
+		}
+
+		Translater translater = createTranslater(rootCacheDir);
+		translater.setFileProvider(getSourceProvider());
+		try {
+			translater.open();
+			try {
+				BundleWatcher watcher = new BundleWatcher(sourceDir, translater.getBundleExtensions());
+				try {
+					translate(translater, false);
+					getLog().info("Watching " + sourceDir + " for changes");
+					while (watcher.isWatching()) {
+						Set<File> changed = watcher.poll(0, quietPeriod);
+						if (changed.isEmpty())
+							continue;
+						getLog().info(changed.size() + " change(s) to bundles, translating");
+						translate(translater, true);
+					}
+					getLog().info(sourceDir + " no longer exists, stopping");
+				} finally {
+					watcher.close();
+				}
+			} finally {
+				translater.close();
+			}
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		} catch (IOException e) {
+			throw new MojoExecutionException("Failed to translate.", e);
+		}
+	}
+
+	private void translate(Translater translater, boolean keepGoing) throws IOException {
+		long started = System.currentTimeMillis();
+		try {
+			translater.translate();
+			getLog().info(translater.getMetrics().getSummary() + " in " + (System.currentTimeMillis() - started)
+					+ "ms");
+		} catch (IOException ioe) {
+			if (!keepGoing)
+				throw ioe;
+			getLog().error("Failed to translate, will try again when bundles next change.", ioe);
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package com.nervepoint.googletranslate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.nervepoint.googletranslate.Translater.TranslationOp;
+
+public class BatchPackerTest {
+
+    @Test
+    public void splitsByCount() {
+        List<TranslationOp> ops = new ArrayList<TranslationOp>();
+        for (int i = 0; i < 25; i++) {
+            ops.add(op("key" + i, "Hello", "text"));
+        }
+        List<List<TranslationOp>> batches = new BatchPacker(10, 5000).pack(ops);
+        Assert.assertEquals(3, batches.size());
+        Assert.assertEquals(10, batches.get(0).size());
+        Assert.assertEquals(5, batches.get(2).size());
+    }
+
+    @Test
+    public void splitsByCharacters() {
+        List<TranslationOp> ops = new ArrayList<TranslationOp>();
+        for (int i = 0; i < 6; i++) {
+            ops.add(op("key" + i, "0123456789", "text"));
+        }
+        List<List<TranslationOp>> batches = new BatchPacker(100, 25).pack(ops);
+        Assert.assertEquals(3, batches.size());
+        for (List<TranslationOp> b : batches) {
+            Assert.assertEquals(2, b.size());
+        }
+    }
+
+    @Test
+    public void partitionsByFormatWithoutDropping() {
+        List<TranslationOp> ops = new ArrayList<TranslationOp>();
+        ops.add(op("a", "One", "text"));
+        ops.add(op("b", "<b>Two</b>", "html"));
+        ops.add(op("c", "Three", "text"));
+        ops.add(op("d", "<i>Four</i>", "html"));
+        List<List<TranslationOp>> batches = new BatchPacker(10, 5000).pack(ops);
+        Assert.assertEquals(2, batches.size());
+        Assert.assertEquals("a", batches.get(0).get(0).keyName);
+        Assert.assertEquals("c", batches.get(0).get(1).keyName);
+        Assert.assertEquals("b", batches.get(1).get(0).keyName);
+        Assert.assertEquals("d", batches.get(1).get(1).keyName);
+    }
+
+    @Test
+    public void oversizedOpGetsOwnRequest() {
+        List<TranslationOp> ops = new ArrayList<TranslationOp>();
+        ops.add(op("a", "Short", "text"));
+        ops.add(op("b", "This value is longer than the budget", "text"));
+        ops.add(op("c", "Short", "text"));
+        List<List<TranslationOp>> batches = new BatchPacker(10, 10).pack(ops);
+        Assert.assertEquals(3, batches.size());
+        Assert.assertEquals("b", batches.get(1).get(0).keyName);
+    }
+
+    private static TranslationOp op(String key, String value, String format) {
+        return new TranslationOp(key, value, new ArrayList<String>(), format, format);
+    }
+}
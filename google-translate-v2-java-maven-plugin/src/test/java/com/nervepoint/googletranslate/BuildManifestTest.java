@@ -0,0 +1,68 @@
+package com.nervepoint.googletranslate;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.UUID;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BuildManifestTest {
+
+    @Test
+    public void savesMergeWithOtherBuilds() throws IOException {
+        File dir = new File(System.getProperty("java.io.tmpdir"), UUID.randomUUID().toString() + ".test");
+        dir.mkdirs();
+        try {
+            File source = new File(dir, "messages.properties");
+            FileUtils.fileWrite(source.getPath(), "save=Save");
+            source.setLastModified(source.lastModified() - 10000);
+            File fr = new File(dir, "messages_fr.properties");
+            File de = new File(dir, "messages_de.properties");
+            File file = new File(dir, BuildManifest.FILENAME);
+
+            /* Two builds load the manifest, then each saves its own pair */
+            BuildManifest one = new BuildManifest(file);
+            BuildManifest two = new BuildManifest(file);
+            one.load();
+            two.load();
+            one.update(source, new File(dir, "none"), fr, "config");
+            two.update(source, new File(dir, "none"), de, "config");
+            one.save();
+            two.save();
+
+            BuildManifest merged = new BuildManifest(file);
+            merged.load();
+            Assert.assertTrue(merged.isUpToDate(source, new File(dir, "none"), fr, "config"));
+            Assert.assertTrue(merged.isUpToDate(source, new File(dir, "none"), de, "config"));
+            Assert.assertFalse(merged.isUpToDate(source, new File(dir, "none"), de, "other"));
+        } finally {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    @Test
+    public void recentChangesNotTrusted() throws IOException {
+        File dir = new File(System.getProperty("java.io.tmpdir"), UUID.randomUUID().toString() + ".test");
+        dir.mkdirs();
+        try {
+            File source = new File(dir, "messages.properties");
+            FileUtils.fileWrite(source.getPath(), "save=Save");
+            File fr = new File(dir, "messages_fr.properties");
+            File none = new File(dir, "none");
+            BuildManifest manifest = new BuildManifest(new File(dir, BuildManifest.FILENAME));
+            manifest.load();
+
+            /* Could be changed again without its state changing */
+            manifest.update(source, none, fr, "config");
+            Assert.assertFalse(manifest.isUpToDate(source, none, fr, "config"));
+
+            source.setLastModified(source.lastModified() - 10000);
+            manifest.update(source, none, fr, "config");
+            Assert.assertTrue(manifest.isUpToDate(source, none, fr, "config"));
+        } finally {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+}
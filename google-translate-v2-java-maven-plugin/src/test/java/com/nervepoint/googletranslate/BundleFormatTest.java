@@ -0,0 +1,209 @@
+package com.nervepoint.googletranslate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BundleFormatTest {
+
+    @Test
+    public void properties() throws IOException {
+        File source = source(".properties", "# Greetings\n"
+                        + "greeting = Hello \\\n"
+                        + "    world\n"
+                        + "! Old style\n"
+                        + "farewell:Goodbye\n"
+                        + "\n"
+                        + "empty=\n"
+                        + "key\\ with\\ spaces Keep\n");
+        BundleFormat format = new PropertiesFormat();
+        Assert.assertEquals("[greeting=Hello world, farewell=Goodbye, empty=, key with spaces=Keep]", read(format,
+                        source).toString());
+
+        Map<String, String> translations = new HashMap<String, String>();
+        translations.put("greeting", "Bonjour le monde");
+        translations.put("farewell", "Au revoir \u00e9");
+        translations.put("empty", "");
+        Assert.assertEquals("#Auto\n"
+                        + "# Greetings\n"
+                        + "greeting=Bonjour le monde\n"
+                        + "! Old style\n"
+                        + "farewell=Au revoir \\u00E9\n"
+                        + "\n"
+                        + "empty=\n", write(format, source, "fr", translations, "Auto", false));
+        Assert.assertTrue(write(format, source, "fr", translations, null, true).contains("Au revoir \u00e9"));
+    }
+
+    @Test
+    public void json() throws IOException {
+        File source = source(".json", "{\"menu\":{\"open\":\"Open\",\"count\":3,\"items\":[\"One\",\"Two\"]},"
+                        + "\"title\":\"Title\"}");
+        BundleFormat format = new JsonFormat();
+        Assert.assertEquals("[menu.open=Open, menu.items[0]=One, menu.items[1]=Two, title=Title]", read(format,
+                        source).toString());
+
+        Map<String, String> translations = new HashMap<String, String>();
+        translations.put("menu.open", "Ouvrir \u00e9");
+        translations.put("menu.items[0]", "Un");
+        String written = write(format, source, "fr", translations, "Auto", false);
+        Assert.assertTrue(written.contains("\\u00E9"));
+        Assert.assertTrue(written.indexOf("open") < written.indexOf("count"));
+        Map<?, ?> json = new ObjectMapper().readValue(written, Map.class);
+        Map<?, ?> menu = (Map<?, ?>) json.get("menu");
+        Assert.assertEquals("Ouvrir \u00e9", menu.get("open"));
+        Assert.assertEquals(3, menu.get("count"));
+        Assert.assertEquals("[Un, Two]", menu.get("items").toString());
+        Assert.assertFalse(json.containsKey("title"));
+    }
+
+    @Test
+    public void po() throws IOException {
+        File source = source(".po", "# Translator comment\n"
+                        + "msgid \"\"\n"
+                        + "msgstr \"\"\n"
+                        + "\"Language: en\\n\"\n"
+                        + "\"Content-Type: text/plain; charset=UTF-8\\n\"\n"
+                        + "\n"
+                        + "#: src/main.c:10\n"
+                        + "msgid \"Hello\"\n"
+                        + "msgstr \"\"\n"
+                        + "\n"
+                        + "msgctxt \"menu\"\n"
+                        + "msgid \"Open\"\n"
+                        + "msgstr \"\"\n"
+                        + "\n"
+                        + "#, c-format\n"
+                        + "msgid \"%d file\"\n"
+                        + "msgid_plural \"%d files\"\n"
+                        + "msgstr[0] \"\"\n"
+                        + "msgstr[1] \"\"\n"
+                        + "\n"
+                        + "msgid \"\"\n"
+                        + "\"Two\\n\"\n"
+                        + "\"lines\"\n"
+                        + "msgstr \"\"\n"
+                        + "\n"
+                        + "msgid \"Quit\"\n"
+                        + "msgstr \"\"\n");
+        BundleFormat format = new PoFormat();
+        Assert.assertEquals("[Hello=Hello, menu\u0004Open=Open, %d file=%d file, %d file\u0000%d files=%d files, "
+                        + "Two\nlines=Two\nlines, Quit=Quit]", read(format, source).toString());
+
+        Map<String, String> translations = new HashMap<String, String>();
+        translations.put("Hello", "Bonjour \"\u00e9\"");
+        translations.put("menu\u0004Open", "Ouvrir");
+        translations.put("%d file", "%d fichier");
+        translations.put("%d file\u0000%d files", "%d fichiers");
+        translations.put("Two\nlines", "Deux\nlignes");
+        Assert.assertEquals("# Auto\n"
+                        + "# Translator comment\n"
+                        + "msgid \"\"\n"
+                        + "msgstr \"\"\n"
+                        + "\"Language: fr\\n\"\n"
+                        + "\"Content-Type: text/plain; charset=UTF-8\\n\"\n"
+                        + "\"Plural-Forms: nplurals=2; plural=(n > 1);\\n\"\n"
+                        + "\n"
+                        + "#: src/main.c:10\n"
+                        + "msgid \"Hello\"\n"
+                        + "msgstr \"Bonjour \\\"\u00e9\\\"\"\n"
+                        + "\n"
+                        + "msgctxt \"menu\"\n"
+                        + "msgid \"Open\"\n"
+                        + "msgstr \"Ouvrir\"\n"
+                        + "\n"
+                        + "#, c-format\n"
+                        + "msgid \"%d file\"\n"
+                        + "msgid_plural \"%d files\"\n"
+                        + "msgstr[0] \"%d fichier\"\n"
+                        + "msgstr[1] \"%d fichiers\"\n"
+                        + "\n"
+                        + "msgid \"\"\n"
+                        + "\"Two\\n\"\n"
+                        + "\"lines\"\n"
+                        + "msgstr \"\"\n"
+                        + "\"Deux\\n\"\n"
+                        + "\"lignes\"\n"
+                        + "\n"
+                        + "msgid \"Quit\"\n"
+                        + "msgstr \"\"\n", write(format, source, "fr", translations, "Auto", false));
+
+        /* A translated catalog's values are its translations */
+        File translated = source(".po", write(format, source, "fr", translations, null, true));
+        Assert.assertEquals("[Hello=Bonjour \"\u00e9\", menu\u0004Open=Ouvrir, %d file=%d fichier, "
+                        + "%d file\u0000%d files=%d fichiers, Two\nlines=Deux\nlignes, Quit=Quit]", read(format,
+                        translated).toString());
+    }
+
+    @Test
+    public void poPluralForms() throws IOException {
+        File source = source(".po", "msgid \"\"\n"
+                        + "msgstr \"\"\n"
+                        + "\"Language: en\\n\"\n"
+                        + "\"Plural-Forms: nplurals=2; plural=(n != 1);\\n\"\n"
+                        + "\n"
+                        + "msgid \"%d file\"\n"
+                        + "msgid_plural \"%d files\"\n"
+                        + "msgstr[0] \"\"\n"
+                        + "msgstr[1] \"\"\n");
+        BundleFormat format = new PoFormat();
+        Map<String, String> translations = new HashMap<String, String>();
+        translations.put("%d file", "%d plik");
+        translations.put("%d file\u0000%d files", "%d pliki");
+        Assert.assertEquals("msgid \"\"\n"
+                        + "msgstr \"\"\n"
+                        + "\"Language: pl\\n\"\n"
+                        + "\"Plural-Forms: nplurals=3; plural=(n==1 ? 0 : n%10>=2 && n%10<=4 && "
+                        + "(n%100<10 || n%100>=20) ? 1 : 2);\\n\"\n"
+                        + "\n"
+                        + "msgid \"%d file\"\n"
+                        + "msgid_plural \"%d files\"\n"
+                        + "msgstr[0] \"%d plik\"\n"
+                        + "msgstr[1] \"%d pliki\"\n"
+                        + "msgstr[2] \"%d pliki\"\n", write(format, source, "pl", translations, null, true));
+
+        /* The rules are not known, so not the source's either */
+        Assert.assertEquals("msgid \"\"\n"
+                        + "msgstr \"\"\n"
+                        + "\"Language: xx\\n\"\n"
+                        + "\n"
+                        + "msgid \"%d file\"\n"
+                        + "msgid_plural \"%d files\"\n"
+                        + "msgstr[0] \"%d plik\"\n"
+                        + "msgstr[1] \"\"\n", write(format, source, "xx", translations, null, true));
+        Assert.assertEquals("nplurals=1; plural=0;", PoFormat.plurals("zh-TW"));
+    }
+
+    private static List<String> read(BundleFormat format, File file) throws IOException {
+        final List<String> entries = new ArrayList<String>();
+        format.read(file, new BundleFormat.Handler() {
+            @Override
+            public void entry(String key, String value) {
+                entries.add(key + "=" + value);
+            }
+        });
+        return entries;
+    }
+
+    private static String write(BundleFormat format, File source, String language, Map<String, String> translations,
+                                String comment, boolean utf8) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        format.write(source, language, translations, comment, utf8, out);
+        return new String(out.toByteArray(), utf8 || format instanceof PoFormat ? "UTF-8" : "ISO-8859-1");
+    }
+
+    private static File source(String extension, String content) throws IOException {
+        File f = File.createTempFile("bundle", extension);
+        f.deleteOnExit();
+        FileUtils.fileWrite(f.getPath(), "UTF-8", content);
+        return f;
+    }
+}
@@ -0,0 +1,62 @@
+package com.nervepoint.googletranslate;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BundleIndexTest {
+
+    @Test
+    public void groupsFamilies() throws IOException {
+        File dir = new File(System.getProperty("java.io.tmpdir"), UUID.randomUUID().toString() + ".test");
+        File sub = new File(dir, "sub");
+        sub.mkdirs();
+        try {
+            File messages = touch(new File(dir, "messages.properties"));
+            touch(new File(dir, "messages_fr.properties"));
+            touch(new File(dir, "messages_pt_BR.properties"));
+            touch(new File(dir, "messages_de.json"));
+            touch(new File(dir, "notes.txt"));
+            File other = touch(new File(sub, "other.properties"));
+
+            List<Translatable> translatables = new ArrayList<Translatable>();
+            translatables.add(new Translatable(dir, messages));
+            translatables.add(new Translatable(dir, other));
+            BundleIndex index = BundleIndex.build(translatables, Arrays.asList(".properties", ".json"));
+
+            Assert.assertEquals(5, index.size());
+            Assert.assertEquals(messages.length(), index.get(messages).length);
+            Assert.assertNull(index.get(new File(dir, "notes.txt")));
+
+            BundleIndex.Family family = index.family(dir, "messages", ".properties");
+            Assert.assertEquals(messages.getAbsoluteFile(), family.get("").file);
+            Assert.assertNotNull(family.get("fr"));
+            Assert.assertNotNull(family.get("pt_BR"));
+            Assert.assertNull(family.get("de"));
+            Assert.assertNotNull(index.family(dir, "messages", ".json").get("de"));
+            Assert.assertNotNull(index.family(sub, "other", ".properties"));
+            Assert.assertNull(index.family(dir, "other", ".properties"));
+        } finally {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    @Test
+    public void countries() {
+        Assert.assertTrue(BundleIndex.isCountry("GB"));
+        Assert.assertTrue(BundleIndex.isCountry("BR"));
+        Assert.assertFalse(BundleIndex.isCountry("Latn"));
+    }
+
+    private static File touch(File file) throws IOException {
+        FileUtils.fileWrite(file.getPath(), "a=" + file.getName());
+        return file;
+    }
+}
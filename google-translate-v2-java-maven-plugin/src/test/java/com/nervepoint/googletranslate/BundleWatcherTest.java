@@ -0,0 +1,50 @@
+package com.nervepoint.googletranslate;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.UUID;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BundleWatcherTest {
+
+    @Test
+    public void seesBundlesSaved() throws IOException, InterruptedException {
+        File dir = new File(System.getProperty("java.io.tmpdir"), UUID.randomUUID().toString() + ".test");
+        File sub = new File(dir, "sub");
+        sub.mkdirs();
+        BundleWatcher watcher = new BundleWatcher(dir, Collections.singleton(".properties"));
+        try {
+            Assert.assertTrue(watcher.poll(50, 10).isEmpty());
+
+            final File bundle = new File(sub, "messages.properties");
+            FileUtils.fileWrite(bundle.getPath(), "save=Save");
+            FileUtils.fileWrite(new File(dir, "notes.txt").getPath(), "Not a bundle");
+            Set<File> changed = watcher.poll(10000, 100);
+            Assert.assertTrue(changed.contains(bundle));
+            Assert.assertFalse(changed.contains(new File(dir, "notes.txt")));
+        } finally {
+            watcher.close();
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void stopsWhenDirectoryGoes() throws IOException, InterruptedException {
+        File dir = new File(System.getProperty("java.io.tmpdir"), UUID.randomUUID().toString() + ".test");
+        new File(dir, "sub").mkdirs();
+        BundleWatcher watcher = new BundleWatcher(dir, Collections.singleton(".properties"));
+        try {
+            FileUtils.deleteDirectory(dir);
+            while (watcher.isWatching()) {
+                watcher.poll(0, 10);
+            }
+        } finally {
+            watcher.close();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.nervepoint.googletranslate;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.UUID;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CacheSnapshotTest {
+
+    @Test
+    public void exportAndImport() throws IOException {
+        File dir = new File(System.getProperty("java.io.tmpdir"), UUID.randomUUID().toString() + ".test");
+        try {
+            File from = new File(dir, "from");
+            from.mkdirs();
+            TranslationMemory tm = new TranslationMemory(new File(from, TranslationMemory.FILENAME));
+            tm.open();
+            tm.put(TranslationMemory.key("en", "fr", "text", "a"), "Enregistrer");
+            tm.put(TranslationMemory.key("en", "de", "text", "a"), "Speichern");
+            tm.put("legacy|/home/someone/.i18n_cache/x_fr.properties", "1:2");
+            tm.close();
+
+            /* Named by content, so the same translations make the same file */
+            File snapshot = CacheSnapshot.export(from, new File(dir, "out"), "test");
+            Assert.assertTrue(snapshot.getName().startsWith("test-"));
+            Assert.assertTrue(snapshot.getName().endsWith(CacheSnapshot.EXTENSION));
+            Assert.assertEquals(snapshot, CacheSnapshot.export(from, new File(dir, "out"), "test"));
+
+            File to = new File(dir, "to");
+            to.mkdirs();
+            tm = new TranslationMemory(new File(to, TranslationMemory.FILENAME));
+            tm.open();
+            tm.put(TranslationMemory.key("en", "de", "text", "a"), "Sichern");
+            tm.close();
+
+            Assert.assertEquals(1, CacheSnapshot.importInto(snapshot, to));
+            Assert.assertEquals(0, CacheSnapshot.importInto(snapshot, to));
+
+            tm = new TranslationMemory(new File(to, TranslationMemory.FILENAME));
+            tm.open();
+            Assert.assertEquals(2, tm.size());
+            Assert.assertEquals("Enregistrer", tm.get(TranslationMemory.key("en", "fr", "text", "a")));
+            Assert.assertEquals("Sichern", tm.get(TranslationMemory.key("en", "de", "text", "a")));
+            tm.close();
+        } finally {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+}
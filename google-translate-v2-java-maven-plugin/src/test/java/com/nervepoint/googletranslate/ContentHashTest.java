@@ -0,0 +1,28 @@
+package com.nervepoint.googletranslate;
+
+import java.nio.charset.Charset;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ContentHashTest {
+
+    @Test
+    public void murmurMatchesReference() {
+        /* MurmurHash3_x64_128 of the UTF-16LE bytes, seed 0, as h1 then h2 */
+        Assert.assertEquals("m3:00000000000000000000000000000000", ContentHash.of(""));
+        Assert.assertEquals("m3:0eec6ace370a71c3324676dacc40db58", ContentHash.of("Save"));
+        Assert.assertEquals("m3:c5f851d04ebd9953ec402e78fb583829", ContentHash.of("Hello world, this is longer"));
+        Assert.assertEquals("m3:b01be6dbfa106af57497aebe2b4cc8a5", ContentHash.of("${count} files in ${folder}"));
+        Assert.assertEquals("m3:a6165981adc10cb749b0b154c09d2739", ContentHash.of("Gr\u00f6\u00dfe \u20ac"));
+    }
+
+    @Test
+    public void md5MatchesEarlierVersions() {
+        for (String s : new String[] { "", "Save", "Gr\u00f6\u00dfe \u20ac", "<span class=\"notranslate\">NO_TRANSLATE</span>" }) {
+            Assert.assertEquals(DigestUtils.md5Hex(s.getBytes(Charset.forName("UTF-8"))),
+                            ContentHash.md5(s));
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.nervepoint.googletranslate;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.junit.Test;
 
 import com.nervepoint.googletranslate.PatternReplacer;
@@ -16,11 +18,11 @@ public class PatternReplacerTest {
         String original = "A new user request on ${approval.connector.name} has been created by you or someone who "
                         + "supplied this email address. You will be informed when your account is ready. "
                         + "You may visit ${approvalURL} at any time before appproval to amend these details.";
-        String preProcessed = pr.preProcess(original);
-        preProcessed = preProcessed.replace("You may visit <span class=\"notranslate\">NO_TRANSLATE</span> ",
-            "You may visit NO_TRANSLATE ");
+        PatternReplacer.Processed result = pr.preProcess(original);
+        String preProcessed = result.getText().replace("You may visit <span class=\"notranslate\">NO_TRANSLATE1_</span> ",
+            "You may visit NO_TRANSLATE1_ ");
 
-        String postProcessed = pr.postProcess(preProcessed);
+        String postProcessed = pr.postProcess(preProcessed, result.getValues());
         Assert.assertEquals(original, postProcessed);
     }
 
@@ -32,11 +34,11 @@ public class PatternReplacerTest {
         String original = "A new user request on ${approval.connector.name} has been created by you or someone who "
                         + "supplied this email address. You will be informed when your account is ready. "
                         + "You may visit ${approvalURL} at any time before appproval to amend these details.";
-        String preProcessed = pr.preProcess(original);
-        preProcessed = preProcessed.replace("You may visit <span class=\"notranslate\">NO_TRANSLATE</span> ",
-            "You may visit NO_TRANSLATE ");
+        PatternReplacer.Processed result = pr.preProcess(original);
+        String preProcessed = result.getText().replace("You may visit <span class=\"notranslate\">NO_TRANSLATE</span>1_ ",
+            "You may visit NO_TRANSLATE1_ ");
 
-        pr.postProcess(preProcessed);
+        pr.postProcess(preProcessed, result.getValues());
     }
 
     @Test
@@ -59,6 +61,81 @@ public class PatternReplacerTest {
         check(pr, "And now with NOTHING to replace");
     }
 
+    @Test
+    public void reorderedByTranslator() {
+        PatternReplacer pr = createReplacer();
+        pr.setUntranslatableStrings("<span class=\"notranslate\">NO_TRANSLATE</span>", "NO_TRANSLATE");
+        PatternReplacer.Processed result = pr.preProcess("${count} files in ${folder}");
+        Assert.assertEquals("<span class=\"notranslate\">NO_TRANSLATE0_</span> files in <span class=\"notranslate\">NO_TRANSLATE1_</span>",
+            result.getText());
+        Assert.assertEquals("<span class=\"notranslate\">NO_TRANSLATE</span> files in <span class=\"notranslate\">NO_TRANSLATE</span>",
+            result.getCanonicalText());
+
+        /* The translator puts the folder first */
+        String translated = "Dans <span class=\"notranslate\">NO_TRANSLATE1_</span>, NO_TRANSLATE0_ fichiers";
+        Assert.assertEquals("Dans ${folder}, ${count} fichiers", pr.postProcess(translated, result.getValues()));
+    }
+
+    @Test
+    public void tags() {
+        PatternReplacer pr = createReplacer();
+        pr.setUntranslatableStrings("<span class=\"notranslate\">NO_TRANSLATE</span>", "NO_TRANSLATE");
+        pr.setTags(true);
+        PatternReplacer.Processed result = pr.preProcess("${count} files in ${folder}");
+        Assert.assertEquals("<x0/> files in <x1/>", result.getText());
+        Assert.assertEquals("<span class=\"notranslate\">NO_TRANSLATE</span> files in <span class=\"notranslate\">NO_TRANSLATE</span>",
+            result.getCanonicalText());
+        Assert.assertEquals(2 * ("<span class=\"notranslate\">NO_TRANSLATE</span>".length() + 1 - "<x/>".length()),
+            result.getSavedCharacters());
+
+        /* However the translator gives them back, and whichever way they were sent */
+        Assert.assertEquals("Dans ${folder}, ${count} fichiers", pr.postProcess("Dans <x1 />, <x0></x0> fichiers",
+            result.getValues()));
+        Assert.assertEquals("Dans ${folder}, ${count} fichiers", pr.postProcess(
+            "Dans <span class=\"notranslate\">NO_TRANSLATE1_</span>, <x0/> fichiers", result.getValues()));
+    }
+
+    @Test
+    public void unnumberedMarkersRestoredInOrder() {
+        PatternReplacer pr = createReplacer();
+        PatternReplacer.Processed result = pr.preProcess("${a} and ${b}5");
+        Assert.assertEquals("_999_0_ and _999_1_5", result.getText());
+        Assert.assertEquals("${a} et ${b}5", pr.postProcess("_999_ et _999_5", result.getValues()));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void droppedMarker() {
+        PatternReplacer pr = createReplacer();
+        PatternReplacer.Processed result = pr.preProcess("${a} and ${b}");
+        pr.postProcess("_999_1_ et", result.getValues());
+    }
+
+    @Test
+    public void sharedBetweenThreads() throws InterruptedException {
+        final PatternReplacer pr = createReplacer();
+        final String[] originals = new String[] { "One ${a} two ${b}", "No patterns at all", "#{x} and %{y} and ${z}" };
+        final AtomicInteger failures = new AtomicInteger();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 1000; i++) {
+                        String original = originals[i % originals.length];
+                        PatternReplacer.Processed result = pr.preProcess(original);
+                        if (!original.equals(pr.postProcess(result.getText(), result.getValues())))
+                            failures.incrementAndGet();
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        Assert.assertEquals(0, failures.get());
+    }
+
     protected PatternReplacer createReplacer() {
         PatternReplacer pr = new PatternReplacer();
         pr.addPattern("\\$\\{[/|!]*[a-zA-Z_\\.0-9]*\\}");
@@ -70,9 +147,10 @@ public class PatternReplacerTest {
 
     private static void check(PatternReplacer pr, String original) {
         System.out.println("Original:" + original);
-        String preProcessed = pr.preProcess(original);
+        PatternReplacer.Processed result = pr.preProcess(original);
+        String preProcessed = result.getText();
         System.out.println("Pre-processed:" + preProcessed);
-        String postProcessed = pr.postProcess(preProcessed);
+        String postProcessed = pr.postProcess(preProcessed, result.getValues());
         System.out.println("Post-processed:" + postProcessed);
         System.out.println(postProcessed);
         Assert.assertEquals(original, postProcessed);
@@ -0,0 +1,68 @@
+package com.nervepoint.googletranslate;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Properties;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PropertiesWriterTest {
+
+    @Test
+    public void sortedAndRepeatable() {
+        Properties p = new Properties();
+        p.setProperty("zebra", "Z");
+        p.setProperty("apple", "A");
+        p.setProperty("mango", "M");
+        String s = new String(PropertiesWriter.format(p, "Comment", false), PropertiesWriter.ISO_8859_1);
+        Assert.assertEquals("#Comment\napple=A\nmango=M\nzebra=Z\n", s);
+
+        Properties q = new Properties();
+        q.setProperty("mango", "M");
+        q.setProperty("zebra", "Z");
+        q.setProperty("apple", "A");
+        Assert.assertEquals(s, new String(PropertiesWriter.format(q, "Comment", false), PropertiesWriter.ISO_8859_1));
+    }
+
+    @Test
+    public void readsBackTheSame() throws IOException {
+        Properties p = new Properties();
+        p.setProperty("key with spaces", " leading space, = : # ! \\ \t\n\r\f tail ");
+        p.setProperty("=:#!", "\u00e9t\u00e9 \u65e5\u672c\u8a9e \u0001");
+        p.setProperty("empty", "");
+
+        Properties ascii = new Properties();
+        ascii.load(new ByteArrayInputStream(PropertiesWriter.format(p, "Multi\nline", false)));
+        Assert.assertEquals(p, ascii);
+
+        byte[] utf8 = PropertiesWriter.format(p, null, true);
+        Properties fromUtf8 = new Properties();
+        fromUtf8.load(new InputStreamReader(new ByteArrayInputStream(utf8), PropertiesWriter.UTF8));
+        Assert.assertEquals(p, fromUtf8);
+        Assert.assertTrue(new String(utf8, PropertiesWriter.UTF8).contains("\u65e5\u672c\u8a9e"));
+    }
+
+    @Test
+    public void unchangedFileNotWritten() throws IOException {
+        File f = File.createTempFile("bundle", ".properties");
+        try {
+            Properties p = new Properties();
+            p.setProperty("save", "Enregistrer");
+            byte[] content = PropertiesWriter.format(p, null, false);
+            Assert.assertTrue(PropertiesWriter.write(f, content));
+            f.setLastModified(1000000000L);
+
+            Assert.assertFalse(PropertiesWriter.write(f, content));
+            Assert.assertEquals(1000000000L, f.lastModified());
+
+            p.setProperty("cancel", "Annuler");
+            Assert.assertTrue(PropertiesWriter.write(f, PropertiesWriter.format(p, null, false)));
+            Assert.assertTrue(f.lastModified() != 1000000000L);
+        } finally {
+            f.delete();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.nervepoint.googletranslate;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RateLimiterTest {
+
+    @Test
+    public void throttlingHalvesAndSuccessGrowsBack() throws InterruptedException {
+        RateLimiter limiter = new RateLimiter(8, 0, 0, 10, 1000);
+        Assert.assertEquals(8, limiter.getConcurrency());
+
+        long permit = limiter.acquire(10);
+        limiter.release();
+        Assert.assertTrue(limiter.throttled(permit));
+        Assert.assertEquals(4, limiter.getConcurrency());
+
+        /* Another rejection of a request sent before the decrease is ignored */
+        Assert.assertFalse(limiter.throttled(permit));
+        Assert.assertEquals(4, limiter.getConcurrency());
+
+        /* About one more for each window of successes */
+        for (int i = 0; i < 4; i++) {
+            limiter.succeeded();
+        }
+        Assert.assertEquals(4, limiter.getConcurrency());
+        limiter.succeeded();
+        Assert.assertEquals(5, limiter.getConcurrency());
+        for (int i = 0; i < 100; i++) {
+            limiter.succeeded();
+        }
+        Assert.assertEquals(8, limiter.getConcurrency());
+    }
+
+    @Test
+    public void neverBelowOne() throws InterruptedException {
+        RateLimiter limiter = new RateLimiter(2, 0, 0, 10, 1000);
+        for (int i = 0; i < 5; i++) {
+            long permit = limiter.acquire(1);
+            limiter.release();
+            limiter.throttled(permit);
+        }
+        Assert.assertEquals(1, limiter.getConcurrency());
+    }
+
+    @Test
+    public void backoffDoublesWithJitterUpToLimit() {
+        RateLimiter limiter = new RateLimiter(1, 0, 0, 100, 1000);
+        for (int i = 0; i < 20; i++) {
+            long first = limiter.backoff(0, 0);
+            Assert.assertTrue(first >= 50 && first <= 100);
+            long third = limiter.backoff(2, 0);
+            Assert.assertTrue(third >= 200 && third <= 400);
+            long capped = limiter.backoff(10, 0);
+            Assert.assertTrue(capped >= 500 && capped <= 1000);
+        }
+        Assert.assertEquals(5000, limiter.backoff(0, 5000));
+    }
+
+    @Test
+    public void requestsPerSecondLimited() throws InterruptedException {
+        RateLimiter limiter = new RateLimiter(1, 20, 0, 10, 1000);
+        long started = System.nanoTime();
+        /* A second's worth go straight away, the next 5 need a quarter second */
+        for (int i = 0; i < 25; i++) {
+            limiter.acquire(1);
+            limiter.release();
+        }
+        long took = (System.nanoTime() - started) / 1000000;
+        Assert.assertTrue("Took " + took + "ms", took >= 200);
+    }
+}
@@ -0,0 +1,65 @@
+package com.nervepoint.googletranslate;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Collections;
+import java.util.UUID;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RemoteCacheServerTest {
+
+    @Test
+    public void onlyServesClientsWithToken() throws IOException {
+        File dir = new File(System.getProperty("java.io.tmpdir"), UUID.randomUUID().toString() + ".test");
+        RemoteCacheServer server = new RemoteCacheServer(new InetSocketAddress("127.0.0.1", 0), dir);
+        server.setToken("secret");
+        server.start();
+        try {
+            String url = "http://127.0.0.1:" + server.getAddress().getPort();
+            HttpRemoteCache stranger = new HttpRemoteCache(url);
+            try {
+                stranger.put(Collections.singletonMap("key", "Poisoned"));
+                Assert.fail("Stored without a token");
+            } catch (IOException ioe) {
+                // Expected
+            }
+
+            HttpRemoteCache client = new HttpRemoteCache(url);
+            client.setToken("secret");
+            client.put(Collections.singletonMap("key", "Translated"));
+            Assert.assertEquals(Collections.singletonMap("key", "Translated"), client.get(Collections
+                            .singleton("key")));
+        } finally {
+            server.stop();
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    @Test
+    public void rejectsLookupWithoutKeys() throws IOException {
+        File dir = new File(System.getProperty("java.io.tmpdir"), UUID.randomUUID().toString() + ".test");
+        RemoteCacheServer server = new RemoteCacheServer(new InetSocketAddress("127.0.0.1", 0), dir);
+        server.start();
+        try {
+            HttpURLConnection conn = (HttpURLConnection) new URL("http://127.0.0.1:" + server.getAddress().getPort()
+                            + "/lookup").openConnection();
+            conn.setDoOutput(true);
+            conn.setRequestMethod("POST");
+            OutputStream out = conn.getOutputStream();
+            out.write("{}".getBytes("UTF-8"));
+            out.close();
+            Assert.assertEquals(400, conn.getResponseCode());
+            conn.disconnect();
+        } finally {
+            server.stop();
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+}
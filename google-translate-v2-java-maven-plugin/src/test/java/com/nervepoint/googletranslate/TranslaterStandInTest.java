@@ -0,0 +1,710 @@
+package com.nervepoint.googletranslate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.nervepoint.googletranslate.Translater.TranslatableProvider;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Runs the translater against a local stand-in for the Google endpoint, which
+ * "translates" by prefixing the text with the target language.
+ */
+public class TranslaterStandInTest {
+
+    private HttpServer server;
+    private File workDir;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger compressed = new AtomicInteger();
+    private final AtomicInteger throttle = new AtomicInteger();
+
+    @Before
+    public void start() throws IOException {
+        workDir = new File(System.getProperty("java.io.tmpdir"), UUID.randomUUID().toString() + ".test");
+        workDir.mkdirs();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                requests.incrementAndGet();
+                if (throttle.getAndDecrement() > 0) {
+                    byte[] error = "{\"error\":{\"errors\":[{\"reason\":\"userRateLimitExceeded\"}],\"code\":403}}"
+                                    .getBytes("UTF-8");
+                    exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+                    exchange.sendResponseHeaders(403, error.length);
+                    exchange.getResponseBody().write(error);
+                    exchange.close();
+                    return;
+                }
+                InputStream in = exchange.getRequestBody();
+                if ("gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+                    compressed.incrementAndGet();
+                    in = new GZIPInputStream(in);
+                }
+                String target = null;
+                List<String> q = new ArrayList<String>();
+                for (String param : read(in).split("&")) {
+                    int idx = param.indexOf('=');
+                    String name = param.substring(0, idx);
+                    String value = URLDecoder.decode(param.substring(idx + 1), "UTF-8");
+                    if (name.equals("q"))
+                        q.add(value);
+                    else if (name.equals("target"))
+                        target = value;
+                }
+                StringBuilder json = new StringBuilder("{\"data\":{\"translations\":[");
+                for (int i = 0; i < q.size(); i++) {
+                    if (i > 0)
+                        json.append(',');
+                    json.append("{\"translatedText\":\"").append(target).append(':').append(q.get(i).replace("\"", "\\\""))
+                                    .append("\"}");
+                }
+                json.append("]}}");
+                byte[] response = json.toString().getBytes("UTF-8");
+                exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+                exchange.sendResponseHeaders(200, response.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(response);
+                out.close();
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void stop() throws IOException {
+        server.stop(0);
+        FileUtils.deleteDirectory(workDir);
+    }
+
+    @Test
+    public void batchesAcrossBundlesAndSkipsUnchanged() throws IOException {
+        File sourceDir = new File(workDir, "src");
+        sourceDir.mkdirs();
+        final List<Translatable> files = new ArrayList<Translatable>();
+        files.add(new Translatable(sourceDir, bundle(sourceDir, "one", "save", "Save", "cancel", "Cancel")));
+        files.add(new Translatable(sourceDir, bundle(sourceDir, "two", "save", "Save", "greeting", "Hello")));
+
+        Translater t = createTranslater();
+        File metricsFile = new File(workDir, "metrics.json");
+        t.setMetricsFile(metricsFile);
+        t.setFileProvider(provider(files));
+        t.execute();
+
+        /* One request per language, "Save" only sent once */
+        Assert.assertEquals(2, requests.get());
+        Assert.assertEquals(2, compressed.get());
+        Assert.assertEquals(2, t.getMetrics().getRequests());
+        Assert.assertEquals(0, t.getMetrics().getCacheHits());
+        Assert.assertEquals(8, t.getMetrics().getCacheMisses());
+        Assert.assertEquals("Save".length() * 2 + "Cancel".length() * 2 + "Hello".length() * 2, t.getMetrics()
+                        .getCharactersSent());
+        Assert.assertTrue(t.getMetrics().getBytesWritten() > 0);
+        Map<?, ?> json = new ObjectMapper().readValue(metricsFile, Map.class);
+        Assert.assertEquals(2, ((Map<?, ?>) json.get("requests")).get("count"));
+        Assert.assertTrue(((Map<?, ?>) json.get("requests")).containsKey("latencyMillis"));
+        Properties fr = load(new File(t.getTargetDirectory(), "one_fr.properties"));
+        Assert.assertEquals("fr:Save", fr.getProperty("save"));
+        Assert.assertEquals("fr:Cancel", fr.getProperty("cancel"));
+        Properties de = load(new File(t.getTargetDirectory(), "two_de.properties"));
+        Assert.assertEquals("de:Save", de.getProperty("save"));
+        Assert.assertEquals("de:Hello", de.getProperty("greeting"));
+
+        /* Nothing changed, so nothing sent */
+        t.execute();
+        Assert.assertEquals(2, requests.get());
+        Assert.assertEquals(0, t.getMetrics().getRequests());
+
+        /* Everything is looked at again, but the same output is not rewritten */
+        File target = new File(t.getTargetDirectory(), "one_fr.properties");
+        target.setLastModified(1000000000L);
+        new File(t.getCacheDir(), BuildManifest.FILENAME).delete();
+        t.execute();
+        Assert.assertEquals(2, requests.get());
+        Assert.assertEquals(1000000000L, target.lastModified());
+    }
+
+    @Test
+    public void concurrentRunsWriteTheSameAsOneThread() throws IOException {
+        File sourceDir = new File(workDir, "src");
+        sourceDir.mkdirs();
+        List<Translatable> files = new ArrayList<Translatable>();
+        for (int i = 0; i < 6; i++) {
+            files.add(new Translatable(sourceDir, bundle(sourceDir, "bundle" + i, "save", "Save", "item", "Item " + i,
+                            "greeting", "Hello")));
+        }
+        File[] targets = new File[2];
+        int[] threads = { 1, 8 };
+        for (int i = 0; i < threads.length; i++) {
+            Translater t = createTranslater();
+            t.setLanguages("fr,de,es");
+            t.setThreads(threads[i]);
+            t.setRequestsInFlight(threads[i]);
+            t.setMaxSourcesPerCall(2);
+            t.setCacheDir(new File(workDir, "cache-" + threads[i]));
+            t.setTargetDirectory(targets[i] = new File(workDir, "target-" + threads[i]));
+            t.setFileProvider(provider(files));
+            t.execute();
+        }
+
+        String[] names = targets[0].list();
+        Arrays.sort(names);
+        String[] concurrent = targets[1].list();
+        Arrays.sort(concurrent);
+        Assert.assertEquals(18, names.length);
+        Assert.assertArrayEquals(names, concurrent);
+        for (String name : names) {
+            Assert.assertArrayEquals(name, Files.readAllBytes(new File(targets[0], name).toPath()), Files
+                            .readAllBytes(new File(targets[1], name).toPath()));
+        }
+    }
+
+    @Test
+    public void preparesEachBundleOnceForAllLanguages() throws IOException {
+        File sourceDir = new File(workDir, "src");
+        sourceDir.mkdirs();
+        File one = bundle(sourceDir, "one", "save", "Save");
+        File two = bundle(sourceDir, "two", "greeting", "Hello");
+        Translater t = createTranslater();
+        t.setLanguages("fr,de,es");
+        t.setBundleFormats(Collections.singletonList(CountingFormat.class.getName()));
+        t.setFileProvider(provider(one, two));
+        CountingFormat.reads.set(0);
+        t.execute();
+
+        Assert.assertEquals(2, CountingFormat.reads.get());
+        Assert.assertEquals(3, requests.get());
+        Assert.assertEquals("es:Hello", load(new File(t.getTargetDirectory(), "two_es.properties")).getProperty(
+                        "greeting"));
+    }
+
+    @Test
+    public void placeholdersRestored() throws IOException {
+        File sourceDir = new File(workDir, "src");
+        sourceDir.mkdirs();
+        final File f = bundle(sourceDir, "vars", "files", "${count} files in ${folder}");
+
+        Translater t = createTranslater();
+        List<String> patterns = new ArrayList<String>();
+        patterns.add("\\$\\{[/|!]*[a-zA-Z_\\.0-9]*\\}");
+        t.setNoTranslatePattern(patterns);
+        t.setLanguages("fr");
+        t.setFileProvider(provider(f));
+        t.execute();
+
+        Properties fr = load(new File(t.getTargetDirectory(), "vars_fr.properties"));
+        Assert.assertEquals("fr:${count} files in ${folder}", fr.getProperty("files"));
+    }
+
+    @Test
+    public void placeholderTagsSaveCharacters() throws IOException {
+        File sourceDir = new File(workDir, "src");
+        sourceDir.mkdirs();
+        final File f = bundle(sourceDir, "vars", "files", "${count} files in ${folder}", "plain", "Nothing to keep");
+        TranslatableProvider provider = provider(f);
+        List<String> patterns = new ArrayList<String>();
+        patterns.add("\\$\\{[/|!]*[a-zA-Z_\\.0-9]*\\}");
+
+        /* What earlier versions sent, everything as html with spans */
+        Translater t = createTranslater();
+        t.setNoTranslatePattern(patterns);
+        t.setLanguages("fr");
+        t.setFormat("html");
+        t.setPlaceholders("span");
+        t.setFileProvider(provider);
+        t.execute();
+        Assert.assertEquals(0, t.getMetrics().getCharactersSaved());
+        long spans = t.getMetrics().getCharactersSent();
+
+        /* Tags are the default for Google, and translations already made are still used */
+        FileUtils.deleteDirectory(t.getTargetDirectory());
+        t = createTranslater();
+        t.setNoTranslatePattern(patterns);
+        t.setLanguages("fr,de");
+        t.setFileProvider(provider);
+        t.execute();
+        Assert.assertEquals(2, t.getMetrics().getCacheHits());
+        Assert.assertEquals(1 + 2, requests.get());
+        long saved = 2 * ("<span class=\"notranslate\">NO_TRANSLATE</span>".length() + 1 - "<x/>".length());
+        Assert.assertEquals(saved, t.getMetrics().getCharactersSaved());
+        Assert.assertEquals(spans - saved, t.getMetrics().getCharactersSent());
+        Properties fr = load(new File(t.getTargetDirectory(), "vars_fr.properties"));
+        Assert.assertEquals("fr:${count} files in ${folder}", fr.getProperty("files"));
+        Properties de = load(new File(t.getTargetDirectory(), "vars_de.properties"));
+        Assert.assertEquals("de:${count} files in ${folder}", de.getProperty("files"));
+        Assert.assertEquals("de:Nothing to keep", de.getProperty("plain"));
+    }
+
+    @Test
+    public void stubBackendLimitsBatchesAndIsCachedApart() throws IOException {
+        File sourceDir = new File(workDir, "src");
+        sourceDir.mkdirs();
+        final File f = bundle(sourceDir, "one", "save", "Save", "cancel", "Cancel", "greeting", "Hello");
+        TranslatableProvider provider = provider(f);
+
+        /* The backend only takes one string at a time */
+        StubTranslationBackend stub = new StubTranslationBackend(1, 0);
+        Translater t = createTranslater();
+        t.setLanguages("fr");
+        t.setTranslationBackend(stub);
+        t.setFileProvider(provider);
+        t.execute();
+
+        Assert.assertEquals(3, stub.getCalls());
+        Assert.assertEquals(0, requests.get());
+        Assert.assertEquals("[fr] Save", load(new File(t.getTargetDirectory(), "one_fr.properties")).getProperty("save"));
+
+        /* Switching backend translates again, rather than using the stub's text */
+        t.setTranslationBackend(null);
+        t.execute();
+
+        Assert.assertEquals(1, requests.get());
+        Assert.assertEquals("fr:Save", load(new File(t.getTargetDirectory(), "one_fr.properties")).getProperty("save"));
+    }
+
+    @Test
+    public void planSendsAndWritesNothing() throws IOException {
+        File sourceDir = new File(workDir, "src");
+        sourceDir.mkdirs();
+        final List<Translatable> files = new ArrayList<Translatable>();
+        files.add(new Translatable(sourceDir, bundle(sourceDir, "one", "save", "Save", "cancel", "Cancel")));
+        files.add(new Translatable(sourceDir, bundle(sourceDir, "two", "save", "Save", "greeting", "Hello")));
+        TranslatableProvider provider = provider(files);
+
+        Translater t = createTranslater();
+        t.setApikey(null);
+        t.setPlan(true);
+        File planFile = new File(workDir, "plan.json");
+        t.setPlanFile(planFile);
+        t.setRequestsPerSecond(1);
+        t.setFileProvider(provider);
+        t.execute();
+
+        Assert.assertEquals(0, requests.get());
+        Assert.assertFalse(t.getTargetDirectory().exists());
+        Assert.assertFalse(new File(t.getCacheDir(), TranslationMemory.FILENAME).exists());
+        Assert.assertFalse(new File(t.getCacheDir(), BuildManifest.FILENAME).exists());
+        TranslationPlan plan = t.getPlan();
+        Assert.assertEquals(8, plan.getKeys());
+        Assert.assertEquals(("Save" + "Cancel" + "Hello").length() * 2, plan.getCharacters());
+        Assert.assertEquals(2, plan.getRequests());
+        Assert.assertEquals(2000, plan.getProjectedMillis());
+        Map<?, ?> json = new ObjectMapper().readValue(planFile, Map.class);
+        Assert.assertEquals(2, json.get("requests"));
+
+        /* Once translated there is nothing to plan */
+        t.setApikey("test");
+        t.setPlan(false);
+        t.execute();
+        Assert.assertEquals(2, requests.get());
+        t.setPlan(true);
+        t.execute();
+        Assert.assertEquals(0, t.getPlan().getKeys());
+        Assert.assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void importsWholeLegacyCache() throws IOException {
+        File sourceDir = new File(workDir, "src");
+        sourceDir.mkdirs();
+        File f = bundle(sourceDir, "one", "save", "Save", "cancel", "Cancel");
+        File override = bundle(sourceDir, "one_fr", "cancel", "Abandonner");
+        File cacheDir = new File(workDir, "cache");
+        cacheDir.mkdirs();
+        bundle(cacheDir, "one_fr", "save", ContentHash.md5("Save") + "|Enregistrer", "cancel", ContentHash.md5(
+                        "Cancel") + "|Annuler");
+        List<Translatable> files = new ArrayList<Translatable>();
+        files.add(new Translatable(sourceDir, f));
+        Translater t = createTranslater();
+        t.setLanguages("fr");
+        t.setFileProvider(provider(files));
+        t.execute();
+        Assert.assertEquals(0, requests.get());
+
+        /* No longer overridden, the legacy translation is still there */
+        override.delete();
+        t.execute();
+        Assert.assertEquals(0, requests.get());
+        Properties fr = load(new File(t.getTargetDirectory(), "one_fr.properties"));
+        Assert.assertEquals("Enregistrer", fr.getProperty("save"));
+        Assert.assertEquals("Annuler", fr.getProperty("cancel"));
+    }
+
+    @Test
+    public void staysOpenBetweenRuns() throws IOException {
+        File sourceDir = new File(workDir, "src");
+        sourceDir.mkdirs();
+        final File f = bundle(sourceDir, "one", "save", "Save", "cancel", "Cancel");
+        Translater t = createTranslater();
+        t.setLanguages("fr");
+        t.setFileProvider(provider(f));
+        t.open();
+        try {
+            t.translate();
+            Assert.assertEquals(1, requests.get());
+
+            /* Only the key that changed is sent */
+            bundle(sourceDir, "one", "save", "Save", "cancel", "Cancel now");
+            f.setLastModified(f.lastModified() - 10000);
+            t.translate();
+            Assert.assertEquals(2, requests.get());
+            Assert.assertEquals("Cancel now".length(), t.getMetrics().getCharactersSent());
+            Assert.assertEquals(1, t.getMetrics().getCacheHits());
+            Properties fr = load(new File(t.getTargetDirectory(), "one_fr.properties"));
+            Assert.assertEquals("fr:Cancel now", fr.getProperty("cancel"));
+        } finally {
+            t.close();
+        }
+    }
+
+    @Test
+    public void sameLengthEditWithinModifiedGranularity() throws IOException {
+        File sourceDir = new File(workDir, "src");
+        sourceDir.mkdirs();
+        final File f = bundle(sourceDir, "one", "save", "Save");
+        long modified = f.lastModified();
+        Translater t = createTranslater();
+        t.setLanguages("fr");
+        t.setFileProvider(provider(f));
+        t.open();
+        try {
+            t.translate();
+
+            /* Changed in the same tick of the clock, so the same state */
+            bundle(sourceDir, "one", "save", "Keep");
+            f.setLastModified(modified);
+            t.translate();
+            Properties fr = load(new File(t.getTargetDirectory(), "one_fr.properties"));
+            Assert.assertEquals("fr:Keep", fr.getProperty("save"));
+        } finally {
+            t.close();
+        }
+    }
+
+    @Test
+    public void projectsTranslatedTogether() throws IOException {
+        final List<Translatable> files = new ArrayList<Translatable>();
+        for (String project : new String[] { "a", "b" }) {
+            File sourceDir = new File(workDir, project + "/src");
+            sourceDir.mkdirs();
+            Translatable tr = new Translatable(sourceDir, bundle(sourceDir, project, "save", "Save", "name", project));
+            tr.setTargetDirectory(new File(workDir, project + "/target"));
+            tr.setCacheDir(new File(workDir, project + "/cache"));
+            files.add(tr);
+        }
+
+        Translater t = createTranslater();
+        t.setLanguages("fr");
+        t.setFileProvider(provider(files));
+        t.execute();
+
+        /* One request, with "Save" only sent once */
+        Assert.assertEquals(1, requests.get());
+        Assert.assertEquals("Save".length() + "a".length() + "b".length(), t.getMetrics().getCharactersSent());
+        for (String project : new String[] { "a", "b" }) {
+            Properties p = load(new File(workDir, project + "/target/" + project + "_fr.properties"));
+            Assert.assertEquals("fr:Save", p.getProperty("save"));
+            Assert.assertEquals("fr:" + project, p.getProperty("name"));
+            Assert.assertTrue(new File(workDir, project + "/cache/" + TranslationMemory.FILENAME).isFile());
+            Assert.assertTrue(new File(workDir, project + "/cache/" + BuildManifest.FILENAME).isFile());
+        }
+        Assert.assertFalse(new File(t.getTargetDirectory(), "a_fr.properties").exists());
+    }
+
+    @Test
+    public void remoteCacheSharedBetweenMachines() throws IOException {
+        File sourceDir = new File(workDir, "src");
+        sourceDir.mkdirs();
+        final File f = bundle(sourceDir, "one", "save", "Save");
+        TranslatableProvider provider = provider(f);
+        RemoteCacheServer remote = new RemoteCacheServer(new InetSocketAddress("127.0.0.1", 0), new File(workDir,
+                        "remote"));
+        remote.start();
+        try {
+            String url = "http://127.0.0.1:" + remote.getAddress().getPort();
+            Translater t = createTranslater();
+            t.setLanguages("fr");
+            t.setRemoteCacheUrl(url);
+            t.setFileProvider(provider);
+            File metricsFile = new File(workDir, "metrics.json");
+            t.setMetricsFile(metricsFile);
+            t.execute();
+            Assert.assertEquals(1, requests.get());
+            Assert.assertEquals(1, t.getMetrics().getRemoteStored());
+            Map<?, ?> json = new ObjectMapper().readValue(metricsFile, Map.class);
+            Assert.assertEquals(1, ((Map<?, ?>) json.get("remoteCache")).get("stored"));
+
+            /* Another machine, with nothing in its own cache */
+            t = createTranslater();
+            t.setLanguages("fr");
+            t.setRemoteCacheUrl(url);
+            t.setCacheDir(new File(workDir, "other-cache"));
+            t.setTargetDirectory(new File(workDir, "other-target"));
+            t.setFileProvider(provider);
+            t.execute();
+            Assert.assertEquals(1, requests.get());
+            Assert.assertEquals(1, t.getMetrics().getRemoteHits());
+            Assert.assertEquals("fr:Save", load(new File(workDir, "other-target/one_fr.properties")).getProperty(
+                            "save"));
+        } finally {
+            remote.stop();
+        }
+    }
+
+    @Test
+    public void slowRemoteCacheIsNotWaitedFor() throws IOException {
+        File sourceDir = new File(workDir, "src");
+        sourceDir.mkdirs();
+        final File f = bundle(sourceDir, "one", "save", "Save");
+        Translater t = createTranslater();
+        t.setLanguages("fr");
+        t.setRemoteCacheTimeout(100);
+        t.setRemoteCachePush(false);
+        t.setRemoteCache(new FileRemoteCache(new File(workDir, "remote")) {
+            @Override
+            public synchronized Map<String, String> get(Collection<String> keys) throws IOException {
+                try {
+                    Thread.sleep(5000);
+                } catch (InterruptedException ie) {
+                    throw new InterruptedIOException();
+                }
+                return super.get(keys);
+            }
+        });
+        t.setFileProvider(provider(f));
+        long started = System.currentTimeMillis();
+        t.execute();
+        Assert.assertTrue(System.currentTimeMillis() - started < 4000);
+        Assert.assertEquals(1, requests.get());
+        Assert.assertEquals(0, t.getMetrics().getRemoteHits());
+    }
+
+    @Test
+    public void translatesJsonBundles() throws IOException {
+        File sourceDir = new File(workDir, "src");
+        sourceDir.mkdirs();
+        File messages = new File(sourceDir, "messages.json");
+        FileUtils.fileWrite(messages.getPath(), "UTF-8", "{\"title\":\"Save\",\"menu\":{\"open\":\"Open\"}}");
+        FileUtils.fileWrite(new File(sourceDir, "messages_fr.json").getPath(), "UTF-8", "{\"title\":\"Enregistrer\"}");
+        final List<Translatable> files = new ArrayList<Translatable>();
+        files.add(new Translatable(sourceDir, messages));
+        Translater t = createTranslater();
+        t.setFileProvider(provider(files));
+        t.execute();
+
+        ObjectMapper mapper = new ObjectMapper();
+        Map<?, ?> fr = mapper.readValue(new File(t.getTargetDirectory(), "messages_fr.json"), Map.class);
+        Assert.assertEquals("Enregistrer", fr.get("title"));
+        Assert.assertEquals("fr:Open", ((Map<?, ?>) fr.get("menu")).get("open"));
+        Map<?, ?> de = mapper.readValue(new File(t.getTargetDirectory(), "messages_de.json"), Map.class);
+        Assert.assertEquals("de:Save", de.get("title"));
+        Assert.assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void poKeepsWhitespaceAroundText() throws IOException {
+        File sourceDir = new File(workDir, "src");
+        sourceDir.mkdirs();
+        File messages = new File(sourceDir, "messages.po");
+        FileUtils.fileWrite(messages.getPath(), "UTF-8", "msgid \"Saved\\n\"\nmsgstr \"\"\n");
+        final List<Translatable> files = new ArrayList<Translatable>();
+        files.add(new Translatable(sourceDir, messages));
+        Translater t = createTranslater();
+        t.setLanguages("fr");
+        t.setFileProvider(provider(files));
+        t.execute();
+
+        Assert.assertEquals("Saved".length(), t.getMetrics().getCharactersSent());
+        Assert.assertTrue(FileUtils.fileRead(new File(t.getTargetDirectory(), "messages_fr.po"), "UTF-8").contains(
+                        "msgstr \"fr:Saved\\n\"\n"));
+    }
+
+    @Test
+    public void retriesWhenThrottled() throws IOException {
+        File sourceDir = new File(workDir, "src");
+        sourceDir.mkdirs();
+        final File f = bundle(sourceDir, "one", "save", "Save");
+
+        throttle.set(2);
+        Translater t = createTranslater();
+        t.setLanguages("fr");
+        t.setRetryDelay(10);
+        t.setFileProvider(provider(f));
+        t.execute();
+
+        Assert.assertEquals(3, requests.get());
+        Assert.assertEquals("fr:Save", load(new File(t.getTargetDirectory(), "one_fr.properties")).getProperty("save"));
+    }
+
+    @Test(expected = IOException.class)
+    public void givesUpAfterMaxRetries() throws IOException {
+        File sourceDir = new File(workDir, "src");
+        sourceDir.mkdirs();
+        final File f = bundle(sourceDir, "one", "save", "Save");
+
+        throttle.set(10);
+        Translater t = createTranslater();
+        t.setLanguages("fr");
+        t.setRetryDelay(10);
+        t.setMaxRetries(2);
+        t.setFileProvider(provider(f));
+        try {
+            t.execute();
+        } finally {
+            Assert.assertEquals(3, requests.get());
+        }
+    }
+
+    @Test
+    public void translationsKeyedByMd5AreStillUsed() throws IOException {
+        File sourceDir = new File(workDir, "src");
+        sourceDir.mkdirs();
+        final File f = bundle(sourceDir, "one", "save", "Save");
+
+        /* As left by a version that keyed translations by MD5 */
+        File cacheDir = new File(workDir, "cache");
+        cacheDir.mkdirs();
+        TranslationMemory memory = new TranslationMemory(new File(cacheDir, TranslationMemory.FILENAME));
+        memory.open();
+        memory.put(TranslationMemory.key("en", "fr", "text", ContentHash.md5("Save")), "Enregistrer");
+        memory.close();
+
+        Translater t = createTranslater();
+        t.setLanguages("fr");
+        t.setFileProvider(provider(f));
+        t.execute();
+
+        Assert.assertEquals(0, requests.get());
+        Assert.assertEquals("Enregistrer", load(new File(t.getTargetDirectory(), "one_fr.properties")).getProperty(
+                        "save"));
+        memory.open();
+        try {
+            Assert.assertEquals("Enregistrer", memory.get(TranslationMemory.key("en", "fr", "text", ContentHash.of(
+                            "Save"))));
+        } finally {
+            memory.close();
+        }
+    }
+
+    private Translater createTranslater() {
+        Translater t = new Translater();
+        t.setApikey("test");
+        t.setEndpoint("http://127.0.0.1:" + server.getAddress().getPort());
+        t.setCacheDir(new File(workDir, "cache"));
+        t.setTargetDirectory(new File(workDir, "target"));
+        t.setLanguages("fr,de");
+        return t;
+    }
+
+    private static TranslatableProvider provider(final File... files) {
+        return new TranslatableProvider() {
+            @Override
+            public Iterable<Translatable> getTranslatables() throws IOException {
+                List<Translatable> l = new ArrayList<Translatable>();
+                for (File f : files) {
+                    l.add(new Translatable(f));
+                }
+                return l;
+            }
+        };
+    }
+
+    private static TranslatableProvider provider(final List<Translatable> translatables) {
+        return new TranslatableProvider() {
+            @Override
+            public Iterable<Translatable> getTranslatables() throws IOException {
+                return translatables;
+            }
+        };
+    }
+
+    private static File bundle(File dir, String name, String... keysAndValues) throws IOException {
+        Properties p = new Properties();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            p.setProperty(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        File f = new File(dir, name + ".properties");
+        OutputStream out = new FileOutputStream(f);
+        try {
+            p.store(out, null);
+        } finally {
+            out.close();
+        }
+        return f;
+    }
+
+    private static Properties load(File f) throws IOException {
+        Properties p = new Properties();
+        InputStream in = new FileInputStream(f);
+        try {
+            p.load(in);
+        } finally {
+            in.close();
+        }
+        return p;
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int r;
+        while ((r = in.read(buf)) != -1) {
+            out.write(buf, 0, r);
+        }
+        return new String(out.toByteArray(), "UTF-8");
+    }
+
+    /**
+     * Properties, counting how many times bundles are read.
+     */
+    public static class CountingFormat implements BundleFormat {
+        static final AtomicInteger reads = new AtomicInteger();
+
+        private final BundleFormat properties = new PropertiesFormat();
+
+        @Override
+        public String getExtension() {
+            return properties.getExtension();
+        }
+
+        @Override
+        public void read(File file, Handler handler) throws IOException {
+            reads.incrementAndGet();
+            properties.read(file, handler);
+        }
+
+        @Override
+        public void write(File source, String language, Map<String, String> translations, String comment,
+                          boolean utf8, OutputStream out) throws IOException {
+            properties.write(source, language, translations, comment, utf8, out);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.nervepoint.googletranslate;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TranslationMemoryTest {
+
+    @Test
+    public void storeAndReopen() throws IOException {
+        File f = tempFile();
+        TranslationMemory tm = new TranslationMemory(f);
+        tm.open();
+        String k1 = TranslationMemory.key("en", "fr", "text", "abc");
+        String k2 = TranslationMemory.key("en", "de", "text", "abc");
+        tm.put(k1, "Bonjour");
+        tm.put(k2, "Hallo");
+        tm.put(k1, "Salut");
+        Assert.assertEquals("Salut", tm.get(k1));
+        tm.close();
+
+        tm = new TranslationMemory(f);
+        tm.open();
+        Assert.assertEquals(2, tm.size());
+        Assert.assertEquals("Salut", tm.get(k1));
+        Assert.assertEquals("Hallo", tm.get(k2));
+        Assert.assertNull(tm.get(TranslationMemory.key("en", "fr", "html", "abc")));
+        tm.put(TranslationMemory.key("en", "fr", "html", "abc"), "<b>Bonjour</b>");
+        tm.close();
+
+        tm = new TranslationMemory(f);
+        tm.open();
+        Assert.assertEquals(3, tm.size());
+        Assert.assertEquals("<b>Bonjour</b>", tm.get(TranslationMemory.key("en", "fr", "html", "abc")));
+        tm.close();
+    }
+
+    @Test
+    public void discardsPartialRecord() throws IOException {
+        File f = tempFile();
+        TranslationMemory tm = new TranslationMemory(f);
+        tm.open();
+        tm.put("a", "Première");
+        tm.put("b", "Seconde");
+        tm.close();
+
+        /* Simulate an interrupted write */
+        RandomAccessFile raf = new RandomAccessFile(f, "rw");
+        try {
+            raf.setLength(raf.length() - 3);
+        } finally {
+            raf.close();
+        }
+
+        tm = new TranslationMemory(f);
+        tm.open();
+        Assert.assertEquals("Première", tm.get("a"));
+        Assert.assertNull(tm.get("b"));
+        tm.put("c", "Troisième");
+        tm.close();
+
+        tm = new TranslationMemory(f);
+        tm.open();
+        Assert.assertEquals(2, tm.size());
+        Assert.assertEquals("Troisième", tm.get("c"));
+        tm.close();
+    }
+
+    @Test
+    public void concurrentWritersMerge() throws Exception {
+        final File f = tempFile();
+        TranslationMemory a = new TranslationMemory(f);
+        TranslationMemory b = new TranslationMemory(f);
+        a.open();
+        b.open();
+        a.put("a", "From a");
+        b.put("b", "From b");
+        a.flush();
+        b.flush();
+        Assert.assertEquals("From a", b.get("a"));
+        a.close();
+        b.close();
+
+        /* Several at once, each flushing as it goes */
+        List<Thread> threads = new ArrayList<Thread>();
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+        for (int t = 0; t < 4; t++) {
+            final int id = t;
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        TranslationMemory tm = new TranslationMemory(f);
+                        tm.open();
+                        for (int i = 0; i < 100; i++) {
+                            tm.put(id + "-" + i, "Value " + i);
+                            if (i % 10 == 0)
+                                tm.flush();
+                        }
+                        tm.close();
+                    } catch (Throwable e) {
+                        errors.add(e);
+                    }
+                }
+            });
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        Assert.assertEquals(Collections.emptyList(), errors);
+
+        TranslationMemory tm = new TranslationMemory(f);
+        tm.open();
+        Assert.assertEquals(402, tm.size());
+        Assert.assertEquals("From b", tm.get("b"));
+        Assert.assertEquals("Value 99", tm.get("3-99"));
+        tm.close();
+    }
+
+    private static File tempFile() throws IOException {
+        File f = File.createTempFile("memory", ".tm");
+        f.delete();
+        f.deleteOnExit();
+        return f;
+    }
+}